@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.database.MatrixCursor;
+import android.os.Parcel;
+import android.provider.MediaStore;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class MediaFileParcelTest {
+    @Test
+    public void keepsSkeletonFlag() {
+        Configurations configs = new Configurations.Builder()
+                .setSkeletonPages(true)
+                .build();
+        String[] projection = MediaFileLoader.getSkeletonProjection(configs);
+        MatrixCursor data = new MatrixCursor(projection);
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            row[i] = valueOf(projection[i]);
+        }
+        data.addRow(row);
+
+        List<MediaFile> skeletons = MediaFileLoader.asSkeletons(data, configs, false);
+        assertEquals(1, skeletons.size());
+
+        MediaFile restored = parcel(skeletons.get(0));
+        assertTrue(restored.isSkeleton());
+        assertEquals(7, restored.getId());
+        assertEquals(100, restored.getDate());
+    }
+
+    @Test
+    public void fullRowIsNotSkeleton() {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(7);
+        mediaFile.setName("a.jpg");
+        mediaFile.setPath("/sdcard/DCIM/a.jpg");
+        mediaFile.setSize(10);
+
+        assertFalse(parcel(mediaFile).isSkeleton());
+    }
+
+    private static Object valueOf(String column) {
+        switch (column) {
+            case MediaStore.Files.FileColumns._ID:
+                return 7L;
+            case MediaStore.Files.FileColumns.DATE_ADDED:
+                return 100L;
+            case MediaStore.Files.FileColumns.MEDIA_TYPE:
+                return MediaFile.TYPE_IMAGE;
+            case MediaStore.Files.FileColumns.MIME_TYPE:
+                return "image/jpeg";
+            case MediaStore.Audio.AudioColumns.ALBUM_ID:
+                return -1L;
+            default:
+                return "1";
+        }
+    }
+
+    private static MediaFile parcel(MediaFile mediaFile) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            mediaFile.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return MediaFile.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
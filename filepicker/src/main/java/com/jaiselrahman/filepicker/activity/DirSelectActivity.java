@@ -161,7 +161,7 @@ public class DirSelectActivity extends AppCompatActivity implements DirListAdapt
     }
 
     private void loadDirs() {
-        viewModel = new ViewModelProvider(this, new DirViewModel.Factory(getContentResolver(), configs))
+        viewModel = new ViewModelProvider(this, new DirViewModel.Factory(this, configs))
                 .get(DirViewModel.class);
 
         viewModel.dirs.observe(this, new Observer<PagedList<Dir>>() {
@@ -198,18 +198,7 @@ public class DirSelectActivity extends AppCompatActivity implements DirListAdapt
         if (requestCode == DirListAdapter.CAPTURE_IMAGE_VIDEO) {
             File file = dirAdapter.getLastCapturedFile();
             if (resultCode == RESULT_OK) {
-                MediaScannerConnection.scanFile(this, new String[]{file.getAbsolutePath()}, null,
-                        new MediaScannerConnection.OnScanCompletedListener() {
-                            @Override
-                            public void onScanCompleted(String path, final Uri uri) {
-                                runOnUiThread(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        viewModel.refresh();
-                                    }
-                                });
-                            }
-                        });
+                MediaScannerConnection.scanFile(this, new String[]{file.getAbsolutePath()}, null, null);
             } else {
                 getContentResolver().delete(dirAdapter.getLastCapturedUri(),
                         null, null);
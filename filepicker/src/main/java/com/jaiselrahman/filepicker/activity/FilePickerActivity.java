@@ -30,6 +30,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.webkit.MimeTypeMap;
 import android.widget.Toast;
 
@@ -50,8 +51,12 @@ import com.jaiselrahman.filepicker.adapter.MultiSelectionAdapter.OnSelectionList
 import com.jaiselrahman.filepicker.config.Configurations;
 import com.jaiselrahman.filepicker.model.MediaFileLoader;
 import com.jaiselrahman.filepicker.model.MediaFile;
+import com.jaiselrahman.filepicker.model.MediaFileHydrator;
 import com.jaiselrahman.filepicker.model.MediaFileViewModel;
+import com.jaiselrahman.filepicker.model.MonthHistogram;
 import com.jaiselrahman.filepicker.view.DividerItemDecoration;
+import com.jaiselrahman.filepicker.view.FastScroller;
+import com.jaiselrahman.filepicker.view.SectionHeaderDecoration;
 
 import java.util.ArrayList;
 
@@ -73,10 +78,14 @@ public class FilePickerActivity extends AppCompatActivity
     private Configurations configs;
     private FileGalleryAdapter fileGalleryAdapter;
     private MediaFileViewModel viewModel;
+    private SectionHeaderDecoration sectionHeaders;
+    private FastScroller fastScroller;
     private int maxCount;
     private Long dirId = null;
     private String title = null;
     private int title_res = R.string.selection_count;
+    // Set while the selection is filled in before finishing
+    private boolean returningSelection;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -161,6 +170,14 @@ public class FilePickerActivity extends AppCompatActivity
         recyclerView.setHasFixedSize(false);
         recyclerView.setItemViewCacheSize(20);
 
+        if (configs.isDateSections()) {
+            sectionHeaders = new SectionHeaderDecoration(this);
+            recyclerView.addItemDecoration(sectionHeaders);
+            fastScroller = findViewById(R.id.fast_scroller);
+            fastScroller.attachTo(recyclerView);
+            fastScroller.setVisibility(View.VISIBLE);
+        }
+
         if (requestPermission(new String[]{Manifest.permission.READ_EXTERNAL_STORAGE}, REQUEST_WRITE_PERMISSION)) {
             loadFiles();
         }
@@ -178,8 +195,11 @@ public class FilePickerActivity extends AppCompatActivity
     }
 
     private void loadFiles() {
-        viewModel = new ViewModelProvider(this, new MediaFileViewModel.Factory(getContentResolver(), configs, dirId))
+        viewModel = new ViewModelProvider(this, new MediaFileViewModel.Factory(this, configs, dirId))
                 .get(MediaFileViewModel.class);
+        if (configs.isSkeletonPages()) {
+            fileGalleryAdapter.setHydrator(viewModel.getHydrator());
+        }
 
         viewModel.mediaFiles.observe(this, new Observer<PagedList<MediaFile>>() {
             @Override
@@ -187,6 +207,16 @@ public class FilePickerActivity extends AppCompatActivity
                 fileGalleryAdapter.submitList(mediaFiles);
             }
         });
+
+        if (configs.isDateSections()) {
+            viewModel.months.observe(this, new Observer<MonthHistogram>() {
+                @Override
+                public void onChanged(MonthHistogram months) {
+                    sectionHeaders.setSectionIndexer(months, fileGalleryAdapter.getItemStartPosition());
+                    fastScroller.setSectionIndexer(months, fileGalleryAdapter.getItemStartPosition());
+                }
+            });
+        }
     }
 
     @Override
@@ -266,10 +296,7 @@ public class FilePickerActivity extends AppCompatActivity
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.done) {
-            Intent intent = new Intent();
-            intent.putExtra(MEDIA_FILES, fileGalleryAdapter.getSelectedItems());
-            setResult(RESULT_OK, intent);
-            finish();
+            finishWithSelection();
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -372,11 +399,46 @@ public class FilePickerActivity extends AppCompatActivity
     public void onMaxReached() {
     }
 
+    /**
+     * Finishes with the selected files as the result, once their skeletons are filled in.
+     */
+    private void finishWithSelection() {
+        if (returningSelection) return;
+        returningSelection = true;
+
+        ArrayList<MediaFile> mediaFiles = fileGalleryAdapter.getSelectedItems();
+        if (viewModel == null || !configs.isSkeletonPages()) {
+            finishWithResult(mediaFiles);
+            return;
+        }
+        viewModel.getHydrator().hydrate(mediaFiles, new MediaFileHydrator.Callback() {
+            @Override
+            public void onResult(ArrayList<MediaFile> mediaFiles) {
+                if (!isFinishing()) finishWithResult(mediaFiles);
+            }
+        });
+    }
+
+    private void finishWithResult(ArrayList<MediaFile> mediaFiles) {
+        Intent intent = new Intent();
+        intent.putExtra(MEDIA_FILES, mediaFiles);
+        setResult(RESULT_OK, intent);
+        finish();
+    }
+
     @Override
     public void onBackPressed() {
+        ArrayList<MediaFile> mediaFiles = new ArrayList<>(fileGalleryAdapter.getSelectedItems());
+        if (viewModel != null) {
+            // Cancelling doesn't wait for a query, skeletons not filled in yet are returned as is
+            MediaFileHydrator hydrator = viewModel.getHydrator();
+            for (int i = 0; i < mediaFiles.size(); i++) {
+                mediaFiles.set(i, hydrator.get(mediaFiles.get(i)));
+            }
+        }
 
         Intent intent = new Intent();
-        intent.putExtra(MEDIA_FILES, fileGalleryAdapter.getSelectedItems());
+        intent.putExtra(MEDIA_FILES, mediaFiles);
         setResult(RESULT_CANCELED, intent);
 
         super.onBackPressed();
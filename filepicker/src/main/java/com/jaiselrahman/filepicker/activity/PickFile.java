@@ -25,6 +25,7 @@ import androidx.annotation.Nullable;
 
 import com.jaiselrahman.filepicker.config.Configurations;
 import com.jaiselrahman.filepicker.model.MediaFile;
+import com.jaiselrahman.filepicker.model.MediaFileLoader;
 
 import java.util.List;
 
@@ -36,6 +37,9 @@ public class PickFile extends ActivityResultContract<Configurations, List<MediaF
     @NonNull
     @Override
     public Intent createIntent(@NonNull Context context, Configurations input) {
+        if (!throughDir && input.isPrewarm()) {
+            MediaFileLoader.prewarm(context, input);
+        }
         return new Intent(context,
                 throughDir ? DirSelectActivity.class : FilePickerActivity.class
         ).putExtra(FilePickerActivity.CONFIGS, input);
@@ -29,6 +29,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.paging.AsyncPagedListDiffer;
 import androidx.paging.PagedList;
 import androidx.recyclerview.widget.AsyncDifferConfig;
@@ -40,6 +41,7 @@ import com.bumptech.glide.RequestManager;
 import com.bumptech.glide.request.RequestOptions;
 import com.jaiselrahman.filepicker.R;
 import com.jaiselrahman.filepicker.model.MediaFile;
+import com.jaiselrahman.filepicker.model.MediaFileHydrator;
 import com.jaiselrahman.filepicker.utils.FilePickerProvider;
 import com.jaiselrahman.filepicker.utils.TimeUtils;
 import com.jaiselrahman.filepicker.view.SquareImage;
@@ -62,6 +64,8 @@ public class FileGalleryAdapter extends MultiSelectionAdapter<FileGalleryAdapter
     private RequestManager glideRequest;
     private OnSelectionListener<ViewHolder> onSelectionListener;
     private OnCameraClickListener onCameraClickListener;
+    @Nullable
+    private MediaFileHydrator hydrator;
     private boolean showCamera;
     private boolean showVideoCamera;
     private String lastCapturedFile;
@@ -139,10 +143,23 @@ public class FileGalleryAdapter extends MultiSelectionAdapter<FileGalleryAdapter
         super.onBindViewHolder(holder, position);
 
         MediaFile mediaFile = getItem(position);
+        if (hydrator != null && mediaFile != null) {
+            hydrator.request(mediaFile, position);
+        }
 
         holder.bind(mediaFile, null);
     }
 
+    /**
+     * @return the file at {@code position}, the row loaded in full in place of a skeleton
+     * once it is filled in.
+     */
+    @Override
+    protected MediaFile getItem(int position) {
+        MediaFile mediaFile = super.getItem(position);
+        return hydrator != null && mediaFile != null ? hydrator.get(mediaFile) : mediaFile;
+    }
+
     public void openCamera(boolean forVideo) {
         Intent intent;
         String fileName;
@@ -189,6 +206,23 @@ public class FileGalleryAdapter extends MultiSelectionAdapter<FileGalleryAdapter
         this.onSelectionListener = onSelectionListener;
     }
 
+    /**
+     * Fills in skeleton files as they are bound, and binds them again once they are.
+     */
+    public void setHydrator(@Nullable MediaFileHydrator hydrator) {
+        this.hydrator = hydrator;
+        if (hydrator != null) {
+            hydrator.setOnHydratedListener(new MediaFileHydrator.OnHydratedListener() {
+                @Override
+                public void onHydrated(int position, int count) {
+                    // The list may have shrunk meanwhile
+                    int end = Math.min(position + count, FileGalleryAdapter.super.getItemCount());
+                    if (end > position) onChanged(position, end - position, null);
+                }
+            });
+        }
+    }
+
     public void setOnCameraClickListener(OnCameraClickListener onCameraClickListener) {
         this.onCameraClickListener = onCameraClickListener;
     }
@@ -298,7 +332,17 @@ public class FileGalleryAdapter extends MultiSelectionAdapter<FileGalleryAdapter
                 openVideoCamera.setVisibility(forVideo ? View.VISIBLE : View.GONE);
             }
 
-            if (mediaFile == null) return;
+            if (mediaFile == null) {
+                if (forVideo == null) {
+                    // Placeholder of a row not loaded yet
+                    glideRequest.clear(fileThumbnail);
+                    fileThumbnail.setImageDrawable(null);
+                    fileDuration.setVisibility(View.GONE);
+                    fileName.setVisibility(View.GONE);
+                    fileSelected.setVisibility(View.GONE);
+                }
+                return;
+            }
 
             if (mediaFile.getMediaType() == MediaFile.TYPE_VIDEO ||
                     mediaFile.getMediaType() == MediaFile.TYPE_IMAGE) {
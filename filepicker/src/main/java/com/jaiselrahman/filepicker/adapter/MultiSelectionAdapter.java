@@ -81,7 +81,10 @@ public abstract class MultiSelectionAdapter<VH extends MultiSelectionAdapter.Vie
         public void onSelectAll() {
             isSelectionStarted = true;
             selectedItems.clear();
-            selectedItems.addAll(getCurrentList());
+            for (MediaFile mediaFile : getCurrentList()) {
+                // Skip placeholders of rows not loaded yet
+                if (mediaFile != null) selectedItems.add(mediaFile);
+            }
             notifyDataSetChanged();
             if (customOnSelectionListener != null)
                 customOnSelectionListener.onSelectAll();
@@ -122,6 +125,13 @@ public abstract class MultiSelectionAdapter<VH extends MultiSelectionAdapter.Vie
         this.itemStartPosition = itemStartPosition;
     }
 
+    /**
+     * @return adapter position of the first item, after the items that are not files.
+     */
+    public int getItemStartPosition() {
+        return itemStartPosition;
+    }
+
     public int getMaxSelection() {
         return maxSelection;
     }
@@ -293,6 +303,7 @@ public abstract class MultiSelectionAdapter<VH extends MultiSelectionAdapter.Vie
         @Override
         public boolean onLongClick(View v) {
             int position = holder.getAdapterPosition() - itemStartPosition;
+            if (position >= 0 && getItem(position) == null) return true;
             if (enabledSelection) {
                 if (!isSelectionStarted) {
                     onSelectionListener.onSelectionBegin();
@@ -318,6 +329,8 @@ public abstract class MultiSelectionAdapter<VH extends MultiSelectionAdapter.Vie
         @Override
         public void onClick(View v) {
             int position = holder.getAdapterPosition() - itemStartPosition;
+            // Placeholder of a row not loaded yet
+            if (position >= 0 && getItem(position) == null) return;
             if (enabledSelection && (isSelectionStarted || isSingleClickSelection)) {
                 if (selectedItems.contains(getItem(position))) {
                     onSelectionListener.onUnSelected(holder, position);
@@ -40,7 +40,17 @@ public class Configurations implements Parcelable {
         }
     };
 
+    /**
+     * @deprecated Use {@link Builder#setPageSize(int)}, this is only the starting page size
+     * when the page size is adapted to query time.
+     */
+    @Deprecated
     public static int PAGE_SIZE = 120;
+    /**
+     * @deprecated Use {@link Builder#setPrefetchDistance(int)}, this is only the least prefetch
+     * distance when it is derived from the page size.
+     */
+    @Deprecated
     public static int PREFETCH_DISTANCE = 40;
 
     private final boolean imageCaptureEnabled;
@@ -58,10 +68,22 @@ public class Configurations implements Parcelable {
     private final String rootPath;
     private final String[] suffixes;
     private final ArrayList<MediaFile> selectedMediaFiles;
-    private Matcher[] ignorePathMatchers;
+    private final IgnorePathMatcher ignorePathMatcher;
     private final boolean ignoreNoMedia;
     private final boolean ignoreHiddenFile;
     private final String title;
+    private final boolean keysetPaging;
+    private final boolean noMediaFromMediaStore;
+    private final boolean columnarPages;
+    private final boolean mergeCollections;
+    private final int changeDebounceMillis;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final boolean placeholders;
+    private final boolean dateSections;
+    private final boolean prewarm;
+    private final boolean persistentIndex;
+    private final boolean skeletonPages;
 
     private Configurations(Builder builder) {
         this.imageCaptureEnabled = builder.imageCapture;
@@ -81,10 +103,22 @@ public class Configurations implements Parcelable {
         this.rootPath = builder.rootPath;
         this.suffixes = builder.suffixes;
         this.selectedMediaFiles = builder.selectedMediaFiles;
-        setIgnorePathMatchers(builder.ignorePaths);
+        this.ignorePathMatcher = IgnorePathMatcher.of(builder.ignorePaths);
         this.ignoreNoMedia = builder.ignoreNoMedia;
         this.ignoreHiddenFile = builder.ignoreHiddenFile;
         this.title = builder.title;
+        this.keysetPaging = builder.keysetPaging;
+        this.noMediaFromMediaStore = builder.noMediaFromMediaStore;
+        this.columnarPages = builder.columnarPages;
+        this.mergeCollections = builder.mergeCollections;
+        this.changeDebounceMillis = builder.changeDebounceMillis;
+        this.pageSize = builder.pageSize;
+        this.prefetchDistance = builder.prefetchDistance;
+        this.placeholders = builder.placeholders;
+        this.dateSections = builder.dateSections;
+        this.prewarm = builder.prewarm;
+        this.persistentIndex = builder.persistentIndex;
+        this.skeletonPages = builder.skeletonPages;
     }
 
     protected Configurations(Parcel in) {
@@ -105,10 +139,22 @@ public class Configurations implements Parcelable {
         rootPath = in.readString();
         suffixes = in.createStringArray();
         selectedMediaFiles = in.createTypedArrayList(MediaFile.CREATOR);
-        setIgnorePathMatchers(in.createStringArray());
+        ignorePathMatcher = IgnorePathMatcher.of(in.createStringArray());
         ignoreNoMedia = in.readByte() != 0;
         ignoreHiddenFile = in.readByte() != 0;
         title = in.readString();
+        keysetPaging = in.readByte() != 0;
+        noMediaFromMediaStore = in.readByte() != 0;
+        columnarPages = in.readByte() != 0;
+        mergeCollections = in.readByte() != 0;
+        changeDebounceMillis = in.readInt();
+        pageSize = in.readInt();
+        prefetchDistance = in.readInt();
+        placeholders = in.readByte() != 0;
+        dateSections = in.readByte() != 0;
+        prewarm = in.readByte() != 0;
+        persistentIndex = in.readByte() != 0;
+        skeletonPages = in.readByte() != 0;
     }
 
     public boolean isShowVideos() {
@@ -158,6 +204,18 @@ public class Configurations implements Parcelable {
         dest.writeByte((byte) (ignoreNoMedia ? 1 : 0));
         dest.writeByte((byte) (ignoreHiddenFile ? 1 : 0));
         dest.writeString(title);
+        dest.writeByte((byte) (keysetPaging ? 1 : 0));
+        dest.writeByte((byte) (noMediaFromMediaStore ? 1 : 0));
+        dest.writeByte((byte) (columnarPages ? 1 : 0));
+        dest.writeByte((byte) (mergeCollections ? 1 : 0));
+        dest.writeInt(changeDebounceMillis);
+        dest.writeInt(pageSize);
+        dest.writeInt(prefetchDistance);
+        dest.writeByte((byte) (placeholders ? 1 : 0));
+        dest.writeByte((byte) (dateSections ? 1 : 0));
+        dest.writeByte((byte) (prewarm ? 1 : 0));
+        dest.writeByte((byte) (persistentIndex ? 1 : 0));
+        dest.writeByte((byte) (skeletonPages ? 1 : 0));
     }
 
     @Override
@@ -209,8 +267,28 @@ public class Configurations implements Parcelable {
         return suffixes;
     }
 
+    /**
+     * @return matcher for the paths to ignore, or null if none are set.
+     */
+    @Nullable
+    public IgnorePathMatcher getIgnorePathMatcher() {
+        return ignorePathMatcher;
+    }
+
+    /**
+     * @deprecated Use {@link #getIgnorePathMatcher()}, which can be shared across threads.
+     * This returns new matchers on every call.
+     */
+    @Deprecated
+    @Nullable
     public Matcher[] getIgnorePathMatchers() {
-        return ignorePathMatchers;
+        String[] ignorePaths = getIgnorePaths();
+        if (ignorePaths == null) return null;
+        Matcher[] matchers = new Matcher[ignorePaths.length];
+        for (int i = 0; i < ignorePaths.length; i++) {
+            matchers[i] = Pattern.compile(ignorePaths[i]).matcher("");
+        }
+        return matchers;
     }
 
     public boolean isIgnoreNoMediaDir() {
@@ -221,31 +299,63 @@ public class Configurations implements Parcelable {
         return ignoreHiddenFile;
     }
 
-    private void setIgnorePathMatchers(String ignorePaths[]) {
-        if (ignorePaths != null && ignorePaths.length > 0) {
-            ignorePathMatchers = new Matcher[ignorePaths.length];
-            for (int i = 0; i < ignorePaths.length; i++) {
-                ignorePathMatchers[i] = Pattern.compile(ignorePaths[i]).matcher("");
-            }
-        }
-    }
-
     @Nullable
     private String[] getIgnorePaths() {
-        if (ignorePathMatchers != null && ignorePathMatchers.length > 0) {
-            String ignorePaths[] = new String[ignorePathMatchers.length];
-            for (int i = 0; i < ignorePaths.length; i++) {
-                ignorePaths[i] = ignorePathMatchers[i].pattern().pattern();
-            }
-            return ignorePaths;
-        }
-        return null;
+        return ignorePathMatcher != null ? ignorePathMatcher.getPatterns() : null;
     }
 
     public String getTitle() {
         return title;
     }
 
+    public boolean isKeysetPaging() {
+        return keysetPaging;
+    }
+
+    public boolean isNoMediaFromMediaStore() {
+        return noMediaFromMediaStore;
+    }
+
+    public boolean isColumnarPages() {
+        return columnarPages;
+    }
+
+    public boolean isMergeCollections() {
+        return mergeCollections;
+    }
+
+    public int getChangeDebounceMillis() {
+        return changeDebounceMillis;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPrefetchDistance() {
+        return prefetchDistance;
+    }
+
+    public boolean isPlaceholders() {
+        return placeholders;
+    }
+
+    public boolean isDateSections() {
+        return dateSections;
+    }
+
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+
+    public boolean isPersistentIndex() {
+        return persistentIndex;
+    }
+
+    public boolean isSkeletonPages() {
+        return skeletonPages;
+    }
+
     public static class Builder {
         private boolean imageCapture = false, videoCapture = false,
                 checkPermission = false, showImages = true, showVideos = true,
@@ -266,6 +376,18 @@ public class Configurations implements Parcelable {
         private boolean ignoreNoMedia = true;
         private boolean ignoreHiddenFile = true;
         private String title = null;
+        private boolean keysetPaging = true;
+        private boolean noMediaFromMediaStore = false;
+        private boolean columnarPages = false;
+        private boolean mergeCollections = false;
+        private int changeDebounceMillis = 500;
+        private int pageSize = 0;
+        private int prefetchDistance = 0;
+        private boolean placeholders = false;
+        private boolean dateSections = false;
+        private boolean prewarm = false;
+        private boolean persistentIndex = false;
+        private boolean skeletonPages = false;
 
         public Builder setSingleClickSelection(boolean singleClickSelection) {
             this.singleClickSelection = singleClickSelection;
@@ -384,6 +506,71 @@ public class Configurations implements Parcelable {
             return this;
         }
 
+        public Builder setKeysetPaging(boolean keysetPaging) {
+            this.keysetPaging = keysetPaging;
+            return this;
+        }
+
+        public Builder setNoMediaFromMediaStore(boolean noMediaFromMediaStore) {
+            this.noMediaFromMediaStore = noMediaFromMediaStore;
+            return this;
+        }
+
+        public Builder setColumnarPages(boolean columnarPages) {
+            this.columnarPages = columnarPages;
+            return this;
+        }
+
+        public Builder setMergeCollections(boolean mergeCollections) {
+            this.mergeCollections = mergeCollections;
+            return this;
+        }
+
+        public Builder setChangeDebounceMillis(int changeDebounceMillis) {
+            this.changeDebounceMillis = changeDebounceMillis;
+            return this;
+        }
+
+        public Builder setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder setPrefetchDistance(int prefetchDistance) {
+            this.prefetchDistance = prefetchDistance;
+            return this;
+        }
+
+        /**
+         * Keyset paging, which is on by default, loads pages after the last loaded file and
+         * can't count positions, so this needs {@link #setKeysetPaging(boolean)
+         * setKeysetPaging(false)}. It is not used with {@link #setMergeCollections(boolean)}.
+         */
+        public Builder setPlaceholders(boolean placeholders) {
+            this.placeholders = placeholders;
+            return this;
+        }
+
+        public Builder setDateSections(boolean dateSections) {
+            this.dateSections = dateSections;
+            return this;
+        }
+
+        public Builder setPrewarm(boolean prewarm) {
+            this.prewarm = prewarm;
+            return this;
+        }
+
+        public Builder setPersistentIndex(boolean persistentIndex) {
+            this.persistentIndex = persistentIndex;
+            return this;
+        }
+
+        public Builder setSkeletonPages(boolean skeletonPages) {
+            this.skeletonPages = skeletonPages;
+            return this;
+        }
+
         public Configurations build() {
             return new Configurations(this);
         }
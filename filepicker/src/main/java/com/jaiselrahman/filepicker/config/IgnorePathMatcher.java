@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.config;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable matcher for the paths set with {@link Configurations.Builder#setIgnorePaths(String...)}.
+ * <p>
+ * Patterns are folded into a single alternation, so a path is matched in one pass. Patterns
+ * that can't be wrapped in a group safely (back references, quoting to the end, comments
+ * mode) are matched on their own. A new {@link java.util.regex.Matcher} is used per call,
+ * so one instance can be shared by all threads.
+ */
+public final class IgnorePathMatcher {
+    private static final int CACHE_SIZE = 8;
+    private static final char SEPARATOR = '\0';
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+    private static final String ANY = ".*";
+    private static final String REGEX_META = ".*+?()[]{}|^$";
+
+    // Plain Java instead of android.util.LruCache, so the class loads in JVM tests
+    private static final LinkedHashMap<String, IgnorePathMatcher> cache =
+            new LinkedHashMap<String, IgnorePathMatcher>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IgnorePathMatcher> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final String[] patterns;
+    @Nullable
+    private final Pattern combined;
+    private final Pattern[] separate;
+    private final String[] globs;
+
+    IgnorePathMatcher(String[] patterns) {
+        this.patterns = patterns;
+
+        List<String> globs = new ArrayList<>();
+        for (String pattern : patterns) {
+            String glob = toGlob(pattern);
+            if (glob != null) globs.add(glob);
+        }
+        this.globs = globs.toArray(new String[0]);
+
+        StringBuilder alternation = new StringBuilder();
+        List<Pattern> separate = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (!canCombine(pattern)) {
+                separate.add(Pattern.compile(pattern));
+                continue;
+            }
+            // Compiled on its own first so that a bad pattern fails the same way it used to
+            Pattern.compile(pattern);
+            if (alternation.length() > 0) alternation.append('|');
+            alternation.append("(?:").append(pattern).append(')');
+        }
+
+        this.combined = alternation.length() > 0 ? Pattern.compile(alternation.toString()) : null;
+        this.separate = separate.toArray(new Pattern[0]);
+    }
+
+    /**
+     * @return matcher for the given patterns, or null if there are none.
+     * @throws java.util.regex.PatternSyntaxException if a pattern is invalid.
+     */
+    @Nullable
+    public static IgnorePathMatcher of(@Nullable String[] patterns) {
+        if (patterns == null || patterns.length == 0) return null;
+
+        StringBuilder key = new StringBuilder();
+        for (String pattern : patterns) {
+            key.append(pattern).append(SEPARATOR);
+        }
+
+        synchronized (cache) {
+            IgnorePathMatcher matcher = cache.get(key.toString());
+            if (matcher != null) return matcher;
+        }
+        IgnorePathMatcher matcher = new IgnorePathMatcher(patterns.clone());
+        synchronized (cache) {
+            cache.put(key.toString(), matcher);
+        }
+        return matcher;
+    }
+
+    public boolean matches(CharSequence path) {
+        if (combined != null && combined.matcher(path).matches()) return true;
+        for (Pattern pattern : separate) {
+            if (pattern.matcher(path).matches()) return true;
+        }
+        return false;
+    }
+
+    public String[] getPatterns() {
+        return patterns.clone();
+    }
+
+    /**
+     * @return SQLite GLOB patterns equivalent to the ignore patterns that are a literal path
+     * with an optional {@code .*} on either end, like {@code .*WhatsApp.*}. Others are left out.
+     */
+    public String[] getGlobs() {
+        return globs.clone();
+    }
+
+    @Nullable
+    private static String toGlob(String regex) {
+        int start = 0;
+        int end = regex.length();
+        boolean anyBefore = regex.startsWith(ANY);
+        if (anyBefore) start += ANY.length();
+        boolean anyAfter = end - start >= ANY.length() && regex.endsWith(ANY)
+                && (end - ANY.length() == 0 || regex.charAt(end - ANY.length() - 1) != '\\');
+        if (anyAfter) end -= ANY.length();
+
+        StringBuilder glob = new StringBuilder(end - start + 2);
+        if (anyBefore) glob.append('*');
+        int literalStart = glob.length();
+        for (int i = start; i < end; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i == end) return null;
+                c = regex.charAt(i);
+                // \d, \w, \Q and the like aren't literals
+                if (Character.isLetterOrDigit(c)) return null;
+            } else if (REGEX_META.indexOf(c) >= 0) {
+                return null;
+            }
+
+            if (c == '*' || c == '?' || c == '[') {
+                glob.append('[').append(c).append(']');
+            } else {
+                glob.append(c);
+            }
+        }
+        if (glob.length() == literalStart) return null;
+        if (anyAfter) glob.append('*');
+        return glob.toString();
+    }
+
+    private static boolean canCombine(String pattern) {
+        return !hasBackReference(pattern)
+                && !pattern.contains("\\Q")
+                && !COMMENTS_FLAG.matcher(pattern).find();
+    }
+
+    private static boolean hasBackReference(String pattern) {
+        for (int i = 0; i < pattern.length() - 1; i++) {
+            if (pattern.charAt(i) != '\\') continue;
+            char next = pattern.charAt(i + 1);
+            if ((next >= '1' && next <= '9') || next == 'k') return true;
+            // Skip the escaped character so "\\\\1" isn't taken for a back reference
+            i++;
+        }
+        return false;
+    }
+}
@@ -17,22 +17,29 @@
 package com.jaiselrahman.filepicker.model;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContentResolverCompat;
 import androidx.paging.DataSource;
 import androidx.paging.PositionalDataSource;
 
 import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.QueryUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_AUDIO;
@@ -44,12 +51,16 @@ import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
 import static android.provider.MediaStore.MediaColumns.DATE_MODIFIED;
 import static android.provider.MediaStore.MediaColumns.DATE_TAKEN;
 import static android.provider.MediaStore.MediaColumns.SIZE;
-import static com.jaiselrahman.filepicker.model.MediaFileDataSource.appendDefaultFileSelection;
-import static com.jaiselrahman.filepicker.model.MediaFileDataSource.appendFileSelection;
+import static com.jaiselrahman.filepicker.model.MediaFileQuery.appendDefaultFileSelection;
+import static com.jaiselrahman.filepicker.model.MediaFileQuery.appendFileSelection;
+import static com.jaiselrahman.filepicker.model.MediaFileQuery.getIgnorePathSelection;
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
 
 public class DirDataSource extends PositionalDataSource<Dir> {
     private Configurations configs;
     private ContentResolver contentResolver;
+    @Nullable
+    private Context context;
 
     private String[] projection;
     private String sortOrder;
@@ -57,8 +68,10 @@ public class DirDataSource extends PositionalDataSource<Dir> {
     private String[] selectionArgs;
     private Uri uri;
 
-    private DirDataSource(ContentResolver contentResolver, Uri uri, @NonNull Configurations configs) {
+    private DirDataSource(ContentResolver contentResolver, @Nullable Context context, Uri uri,
+                          @NonNull Configurations configs) {
         this.contentResolver = contentResolver;
+        this.context = context;
         this.configs = configs;
         this.uri = uri;
 
@@ -110,6 +123,11 @@ public class DirDataSource extends PositionalDataSource<Dir> {
             selectionBuilder.append(SIZE).append(" > 0 ").append(" and ");
         }
 
+        String ignorePathSelection = getIgnorePathSelection(configs, selectionArgs);
+        if (ignorePathSelection != null) {
+            selectionBuilder.append(ignorePathSelection).append(" and ");
+        }
+
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
             selectionBuilder.append(BUCKET_ID).append(" IS NOT NULL) GROUP BY (").append(BUCKET_ID);
         } else {
@@ -132,26 +150,189 @@ public class DirDataSource extends PositionalDataSource<Dir> {
         callback.onResult(getDirs(params.startPosition, params.loadSize));
     }
 
-    private List<Dir> getDirs(int offset, int limit) {
+    private List<Dir> getDirs(final int offset, final int limit) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             return getDirsQ(offset);
         }
 
-        Cursor data = ContentResolverCompat.query(contentResolver, uri, projection,
-                selection, selectionArgs,
-                sortOrder + " LIMIT " + limit + " OFFSET " + offset, null);
+        return QueryExecutor.execute(getKey("dirs", limit, offset), new QueryExecutor.Loader<List<Dir>>() {
+            @Override
+            public List<Dir> load() {
+                Cursor data = QueryUtils.query(contentResolver, uri, projection,
+                        selection, selectionArgs, sortOrder, limit, offset);
 
-        return DirLoader.getDirs(data, configs);
+                return DirLoader.getDirs(data, configs, NoMediaDirs.get(contentResolver, context, configs));
+            }
+        });
     }
 
     private List<Dir> getDirsQ(int offset) {
         if (offset != 0) return Collections.emptyList();
 
+        if (context == null) {
+            return QueryExecutor.execute(getKey("dirs", 0, 0), new QueryExecutor.Loader<List<Dir>>() {
+                @Override
+                public List<Dir> load() {
+                    Cursor data = ContentResolverCompat.query(contentResolver, uri, projection,
+                            selection, selectionArgs,
+                            sortOrder, null);
+
+                    return DirLoader.getDirs(data, configs, NoMediaDirs.get(contentResolver, context, configs));
+                }
+            });
+        }
+
+        String version = MediaStoreVersion.getVersion(context);
+        long generation = MediaStoreVersion.getGeneration(context);
+
+        DirIndex index = DirIndex.get(context, configs);
+        if (index == null) {
+            return buildIndex(version, generation).getDirs();
+        }
+
+        if (index.isCurrent(version, generation)) {
+            return index.getDirs();
+        }
+
+        if (!index.isStale() && index.canUpdate(version, generation)) {
+            DirIndex updated = index.copy();
+            if (applyChanges(updated)) {
+                updated.setVerified(version, generation);
+                DirIndex.put(context, configs, updated);
+                return updated.getDirs();
+            }
+        }
+
+        rebuildIndex(version, generation);
+        return index.getDirs();
+    }
+
+    private DirIndex buildIndex(@Nullable final String version, final long generation) {
+        return QueryExecutor.execute(getKey("dirIndex", 0, 0), new QueryExecutor.Loader<DirIndex>() {
+            @Override
+            public DirIndex load() {
+                return queryIndex(version, generation);
+            }
+        });
+    }
+
+    private String getKey(String kind, int limit, int offset) {
+        return QueryExecutor.key(kind, uri, projection, selection, selectionArgs, sortOrder, limit, offset);
+    }
+
+    private DirIndex queryIndex(@Nullable String version, long generation) {
+        DirIndex index = new DirIndex();
+
         Cursor data = ContentResolverCompat.query(contentResolver, uri, projection,
                 selection, selectionArgs,
                 sortOrder, null);
+        if (data != null) {
+            try {
+                DirLoader.addToIndex(data, configs, NoMediaDirs.get(contentResolver, context, configs), index, NO_GENERATION);
+            } finally {
+                data.close();
+            }
+        }
+
+        index.setVerified(version, generation);
+        DirIndex.put(context, configs, index);
+        return index;
+    }
+
+    private void rebuildIndex(@Nullable final String version, final long generation) {
+        DirIndex.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isInvalid()) return;
+                buildIndex(version, generation);
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Adds rows changed since the index was built.
+     *
+     * @return false if a row was modified rather than added, and the index has to be rebuilt.
+     */
+    private boolean applyChanges(DirIndex index) {
+        String[] projection = Arrays.copyOf(this.projection, this.projection.length + 1);
+        projection[projection.length - 1] = MediaStore.MediaColumns.GENERATION_ADDED;
+
+        Cursor data = QueryUtils.query(contentResolver, uri, projection,
+                "(" + selection + ") and " + MediaStore.MediaColumns.GENERATION_MODIFIED + " > " + index.getGeneration(),
+                selectionArgs, null, 0, 0);
+        if (data == null) return false;
+
+        try {
+            return DirLoader.addToIndex(data, configs, NoMediaDirs.get(contentResolver, context, configs),
+                    index, index.getGeneration());
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Updates the saved index for the changed rows, querying only the buckets they are in.
+     *
+     * @return false if the index can't be updated this way, like when it was read from disk
+     * and the buckets the rows were in are not known.
+     */
+    boolean updateBuckets(List<Uri> uris) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || context == null) return false;
+
+        DirIndex index = DirIndex.get(context, configs);
+        if (index == null || index.isStale() || !index.hasRowBuckets()) return false;
+
+        String version = MediaStoreVersion.getVersion(context);
+        long generation = MediaStoreVersion.getGeneration(context);
+
+        DirIndex updated = index.copy();
+        Set<Long> bucketIds = new HashSet<>();
+        for (Uri uri : uris) {
+            long id = MediaFileLoader.getId(uri);
+            if (id < 0) return false;
+            // A row moved to another folder also changes the one it was in
+            Long previousBucketId = updated.getBucketId(id);
+            if (previousBucketId != null) bucketIds.add(previousBucketId);
+            Long bucketId = getBucketId(id);
+            if (bucketId != null) {
+                bucketIds.add(bucketId);
+            } else {
+                updated.removeRow(id);
+            }
+        }
+
+        Set<String> noMediaDirs = NoMediaDirs.get(contentResolver, context, configs);
+        for (long bucketId : bucketIds) {
+            updated.remove(bucketId);
+
+            Cursor data = ContentResolverCompat.query(contentResolver, uri, projection,
+                    "(" + selection + ") and " + BUCKET_ID + " = " + bucketId, selectionArgs,
+                    sortOrder, null);
+            if (data == null) return false;
+            try {
+                DirLoader.addToIndex(data, configs, noMediaDirs, updated, NO_GENERATION);
+            } finally {
+                data.close();
+            }
+        }
 
-        return DirLoader.getDirs(data, configs);
+        updated.setVerified(version, generation);
+        DirIndex.put(context, configs, updated);
+        return true;
+    }
+
+    @Nullable
+    private Long getBucketId(long id) {
+        Cursor data = ContentResolverCompat.query(contentResolver, ContentUris.withAppendedId(uri, id),
+                new String[]{BUCKET_ID}, null, null, null, null);
+        if (data == null) return null;
+        try {
+            return data.moveToFirst() && !data.isNull(0) ? data.getLong(0) : null;
+        } finally {
+            data.close();
+        }
     }
 
     private static String[] getDirProjection() {
@@ -168,12 +349,15 @@ public class DirDataSource extends PositionalDataSource<Dir> {
 
     public static class Factory extends DataSource.Factory<Integer, Dir> {
         private ContentResolver contentResolver;
+        @Nullable
+        private Context context;
         private Configurations configs;
 
         private Uri uri;
 
-        Factory(ContentResolver contentResolver, Configurations configs) {
+        Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs) {
             this.contentResolver = contentResolver;
+            this.context = context;
             this.configs = configs;
 
             uri = MediaStore.Files.getContentUri("external");
@@ -183,10 +367,17 @@ public class DirDataSource extends PositionalDataSource<Dir> {
             return uri;
         }
 
+        /**
+         * @see DirDataSource#updateBuckets(List)
+         */
+        boolean updateBuckets(List<Uri> uris) {
+            return new DirDataSource(contentResolver, context, uri, configs).updateBuckets(uris);
+        }
+
         @NonNull
         @Override
         public DataSource<Integer, Dir> create() {
-            return new DirDataSource(contentResolver, uri, configs);
+            return new DirDataSource(contentResolver, context, uri, configs);
         }
     }
 }
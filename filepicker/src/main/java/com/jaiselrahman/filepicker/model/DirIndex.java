@@ -0,0 +1,327 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
+
+/**
+ * Summary of every bucket (name, item count and newest item) for a set of filters, saved
+ * to the cache dir so the folder list can be shown without scanning MediaStore.
+ * <p>
+ * An index is current when the MediaStore generation it was built at is still the latest.
+ * Rows added since then are applied incrementally. Any other change, or an index that
+ * can't be checked on API 29, is shown as is and rebuilt in the background.
+ */
+class DirIndex {
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_PREFIX = "filepicker_dirs_";
+
+    private static final HashMap<String, DirIndex> indexes = new HashMap<>();
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    private final HashMap<Long, Bucket> buckets;
+    // Bucket of each row, not saved, so only known for an index built in this process
+    @Nullable
+    private final HashMap<Long, Long> rowBuckets;
+    private String version;
+    private long generation = NO_GENERATION;
+    private boolean verified;
+    // Set from any thread by markStale
+    private volatile boolean stale;
+
+    DirIndex() {
+        this(true);
+    }
+
+    private DirIndex(boolean trackRows) {
+        buckets = new HashMap<>();
+        rowBuckets = trackRows ? new HashMap<Long, Long>() : null;
+    }
+
+    private DirIndex(DirIndex index) {
+        buckets = new HashMap<>(index.buckets.size());
+        for (Bucket bucket : index.buckets.values()) {
+            buckets.put(bucket.id, new Bucket(bucket));
+        }
+        rowBuckets = index.rowBuckets != null ? new HashMap<>(index.rowBuckets) : null;
+        version = index.version;
+        generation = index.generation;
+        verified = index.verified;
+        stale = index.stale;
+    }
+
+    @Nullable
+    static synchronized DirIndex get(Context context, Configurations configs) {
+        String key = FilterKey.of(configs);
+        DirIndex index = indexes.get(key);
+        if (index == null) {
+            index = read(getFile(context, key), key);
+            if (index != null) indexes.put(key, index);
+        }
+        return index;
+    }
+
+    static synchronized void put(Context context, Configurations configs, DirIndex index) {
+        String key = FilterKey.of(configs);
+        indexes.put(key, index);
+        write(getFile(context, key), key, index);
+    }
+
+    /**
+     * Marks the in-memory index as changed in a way its generation may not show, like a deletion.
+     */
+    static synchronized void markStale(Configurations configs) {
+        DirIndex index = indexes.get(FilterKey.of(configs));
+        if (index != null) index.stale = true;
+    }
+
+    static void execute(Runnable runnable) {
+        executor.execute(runnable);
+    }
+
+    DirIndex copy() {
+        return new DirIndex(this);
+    }
+
+    /**
+     * @return whether the index can be used as is. Without a generation to compare, only an
+     * index built by this process and not marked stale since is.
+     */
+    boolean isCurrent(@Nullable String version, long generation) {
+        if (stale || !TextUtils.equals(this.version, version)) return false;
+        if (generation != NO_GENERATION) return generation == this.generation;
+        return verified;
+    }
+
+    /**
+     * @return whether rows changed after this index was built can be found by generation.
+     */
+    boolean canUpdate(@Nullable String version, long generation) {
+        return TextUtils.equals(this.version, version)
+                && this.generation != NO_GENERATION
+                && generation > this.generation;
+    }
+
+    /**
+     * @return whether the index was marked stale. Its changes may not be found by generation,
+     * so it has to be rebuilt.
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    void setVerified(@Nullable String version, long generation) {
+        this.version = version;
+        this.generation = generation;
+        this.verified = true;
+        this.stale = false;
+    }
+
+    void add(long bucketId, String bucketName, long id, int mediaType, long date) {
+        Bucket bucket = buckets.get(bucketId);
+        if (bucket == null) {
+            bucket = new Bucket(bucketId, bucketName);
+            buckets.put(bucketId, bucket);
+        }
+        bucket.count++;
+        if (rowBuckets != null) rowBuckets.put(id, bucketId);
+        if (bucket.previewId <= 0 || date > bucket.latestDate) {
+            bucket.previewId = id;
+            bucket.previewMediaType = mediaType;
+            bucket.latestDate = date;
+        }
+    }
+
+    void remove(long bucketId) {
+        buckets.remove(bucketId);
+    }
+
+    /**
+     * @return whether {@link #getBucketId} knows the bucket of every row in the index.
+     */
+    boolean hasRowBuckets() {
+        return rowBuckets != null;
+    }
+
+    /**
+     * @return bucket the row was in when it was added, or null if it is not in the index.
+     */
+    @Nullable
+    Long getBucketId(long id) {
+        return rowBuckets != null ? rowBuckets.get(id) : null;
+    }
+
+    void removeRow(long id) {
+        if (rowBuckets != null) rowBuckets.remove(id);
+    }
+
+    /**
+     * @return buckets as {@link Dir}s, the most recently updated first.
+     */
+    List<Dir> getDirs() {
+        List<Bucket> sorted = new ArrayList<>(buckets.values());
+        Collections.sort(sorted, LATEST_FIRST);
+
+        List<Dir> dirs = new ArrayList<>(sorted.size());
+        for (Bucket bucket : sorted) {
+            Dir dir = new Dir();
+            dir.setId(bucket.id);
+            dir.setName(bucket.name);
+            dir.setCount(bucket.count);
+            dir.setPreview(DirLoader.getPreview(bucket.previewId, bucket.previewMediaType));
+            dirs.add(dir);
+        }
+        return dirs;
+    }
+
+    private static File getFile(Context context, String key) {
+        return new File(context.getCacheDir(), FILE_PREFIX + Integer.toHexString(key.hashCode()));
+    }
+
+    @Nullable
+    private static DirIndex read(File file, String key) {
+        if (!file.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+
+            DirIndex index = new DirIndex(false);
+            index.version = in.readBoolean() ? in.readUTF() : null;
+            index.generation = in.readLong();
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Bucket bucket = new Bucket(in.readLong(), in.readBoolean() ? in.readUTF() : null);
+                bucket.count = in.readInt();
+                bucket.previewId = in.readLong();
+                bucket.previewMediaType = in.readInt();
+                bucket.latestDate = in.readLong();
+                index.buckets.put(bucket.id, bucket);
+            }
+            return index;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void write(File file, String key, DirIndex index) {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeBoolean(index.version != null);
+            if (index.version != null) out.writeUTF(index.version);
+            out.writeLong(index.generation);
+
+            out.writeInt(index.buckets.size());
+            for (Bucket bucket : index.buckets.values()) {
+                out.writeLong(bucket.id);
+                out.writeBoolean(bucket.name != null);
+                if (bucket.name != null) out.writeUTF(bucket.name);
+                out.writeInt(bucket.count);
+                out.writeLong(bucket.previewId);
+                out.writeInt(bucket.previewMediaType);
+                out.writeLong(bucket.latestDate);
+            }
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final Comparator<Bucket> LATEST_FIRST = new Comparator<Bucket>() {
+        @Override
+        public int compare(Bucket b1, Bucket b2) {
+            return b1.latestDate < b2.latestDate ? 1 : (b1.latestDate > b2.latestDate ? -1 : 0);
+        }
+    };
+
+    private static class Bucket {
+        private final long id;
+        private final String name;
+        private int count;
+        private long previewId;
+        private int previewMediaType;
+        private long latestDate;
+
+        Bucket(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        Bucket(Bucket bucket) {
+            this(bucket.id, bucket.name);
+            count = bucket.count;
+            previewId = bucket.previewId;
+            previewMediaType = bucket.previewMediaType;
+            latestDate = bucket.latestDate;
+        }
+    }
+}
@@ -22,17 +22,21 @@ import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
 
+import androidx.annotation.Nullable;
+
 import com.jaiselrahman.filepicker.config.Configurations;
 import com.jaiselrahman.filepicker.utils.FileUtils;
+import com.jaiselrahman.filepicker.utils.PathTrie;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_AUDIO;
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
 import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
 
 class DirLoader {
     static final String COUNT = "count";
@@ -43,6 +47,7 @@ class DirLoader {
             MediaStore.Files.FileColumns.BUCKET_ID,
             MediaStore.Files.FileColumns.BUCKET_DISPLAY_NAME,
             MEDIA_TYPE,
+            MediaStore.Files.FileColumns.DATE_ADDED,
     };
 
     private static final int COLUMN_ID = 0;
@@ -50,73 +55,87 @@ class DirLoader {
     private static final int COLUMN_BUCKET_ID = 2;
     private static final int COLUMN_BUCKET_DISPLAY_NAME = 3;
     private static final int COLUMN_MEDIA_TYPE = 4;
-    private static final int COLUMN_COUNT = 5;
+    private static final int COLUMN_DATE_ADDED = 5;
+    private static final int COLUMN_COUNT = 6;
 
-    static List<Dir> getDirs(Cursor data, Configurations configs) {
+    static List<Dir> getDirs(Cursor data, Configurations configs, @Nullable Set<String> noMediaDirs) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            return getDirsQ(data, configs);
+            return getDirsQ(data, configs, noMediaDirs);
         }
 
         List<Dir> dirs = new ArrayList<>();
-        List<String> ignoredPaths = new ArrayList<>();
+        PathTrie ignoredPaths = new PathTrie();
 
         if (data.moveToFirst())
             do {
                 String path = data.getString(DirLoader.COLUMN_DATA);
                 String parent = FileUtils.getParent(path);
 
-                if (!isExcluded(parent, ignoredPaths) && !FileUtils.toIgnoreFolder(path, configs)) {
+                if (!ignoredPaths.containsPrefixOf(parent) && !FileUtils.toIgnoreFolder(path, configs, noMediaDirs)) {
                     Dir mediaDir = new Dir();
                     mediaDir.setId(data.getInt(DirLoader.COLUMN_BUCKET_ID));
                     mediaDir.setName(data.getString(DirLoader.COLUMN_BUCKET_DISPLAY_NAME));
                     mediaDir.setCount(data.getInt(DirLoader.COLUMN_COUNT));
                     mediaDir.setPreview(getPreview(data));
                     dirs.add(mediaDir);
-                } else {
-                    ignoredPaths.add(path);
+                } else if (FileUtils.isNoMediaFolder(parent, configs, noMediaDirs)) {
+                    // Other rows are ignored on their own, a name match doesn't hide the folder
+                    ignoredPaths.add(parent);
                 }
             } while (data.moveToNext());
 
         return dirs;
     }
 
-    private static List<Dir> getDirsQ(Cursor data, Configurations configs) {
-        HashMap<Long, Dir> dirs = new HashMap<>();
-        List<String> ignoredPaths = new ArrayList<>();
+    private static List<Dir> getDirsQ(Cursor data, Configurations configs, @Nullable Set<String> noMediaDirs) {
+        DirIndex index = new DirIndex();
+        addToIndex(data, configs, noMediaDirs, index, NO_GENERATION);
+        return index.getDirs();
+    }
+
+    /**
+     * Adds the rows of a cursor over {@link #DIR_PROJECTION} to the bucket index.
+     *
+     * @param addedAfter if not {@link MediaStoreVersion#NO_GENERATION}, every row is expected to
+     *                   be added after this generation, and the cursor to have its GENERATION_ADDED
+     * @return false if a row was only modified, in which case the index is left partially updated
+     */
+    static boolean addToIndex(Cursor data, Configurations configs, @Nullable Set<String> noMediaDirs,
+                              DirIndex index, long addedAfter) {
+        PathTrie ignoredPaths = new PathTrie();
+        int generationAddedIndex = addedAfter != NO_GENERATION
+                ? data.getColumnIndexOrThrow(MediaStore.MediaColumns.GENERATION_ADDED) : -1;
 
         if (data.moveToFirst())
             do {
+                if (generationAddedIndex >= 0 && data.getLong(generationAddedIndex) <= addedAfter) {
+                    return false;
+                }
+
                 String path = data.getString(DirLoader.COLUMN_DATA);
                 String parent = FileUtils.getParent(path);
 
-                if (!isExcluded(parent, ignoredPaths) && !FileUtils.toIgnoreFolder(path, configs)) {
-                    long dirId = data.getInt(DirLoader.COLUMN_BUCKET_ID);
-
-                    Dir mediaDir = dirs.get(dirId);
-
-                    if (mediaDir == null) {
-                        mediaDir = new Dir();
-                        mediaDir.setId(dirId);
-                        mediaDir.setName(data.getString(DirLoader.COLUMN_BUCKET_DISPLAY_NAME));
-                        mediaDir.setPreview(getPreview(data));
-                        mediaDir.setCount(1);
-
-                        dirs.put(dirId, mediaDir);
-                    } else {
-                        mediaDir.setCount(mediaDir.getCount() + 1);
-                    }
-                } else {
-                    ignoredPaths.add(path);
+                if (!ignoredPaths.containsPrefixOf(parent) && !FileUtils.toIgnoreFolder(path, configs, noMediaDirs)) {
+                    index.add(data.getInt(DirLoader.COLUMN_BUCKET_ID),
+                            data.getString(DirLoader.COLUMN_BUCKET_DISPLAY_NAME),
+                            data.getLong(DirLoader.COLUMN_ID),
+                            data.getInt(DirLoader.COLUMN_MEDIA_TYPE),
+                            data.getLong(DirLoader.COLUMN_DATE_ADDED));
+                } else if (FileUtils.isNoMediaFolder(parent, configs, noMediaDirs)) {
+                    // Other rows are ignored on their own, a name match doesn't hide the folder
+                    ignoredPaths.add(parent);
                 }
             } while (data.moveToNext());
 
-        return new ArrayList<>(dirs.values());
+        return true;
     }
 
     private static Uri getPreview(Cursor cursor) {
-        long id = cursor.getLong(DirLoader.COLUMN_ID);
-        int mediaType = cursor.getInt(DirLoader.COLUMN_MEDIA_TYPE);
+        return getPreview(cursor.getLong(DirLoader.COLUMN_ID), cursor.getInt(DirLoader.COLUMN_MEDIA_TYPE));
+    }
 
+    @Nullable
+    static Uri getPreview(long id, int mediaType) {
         if (id <= 0) return null;
 
         Uri contentUri;
@@ -133,12 +152,4 @@ class DirLoader {
 
         return ContentUris.withAppendedId(contentUri, id);
     }
-
-    @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    private static boolean isExcluded(String path, List<String> ignoredPaths) {
-        for (String p : ignoredPaths) {
-            if (path.startsWith(p)) return true;
-        }
-        return false;
-    }
 }
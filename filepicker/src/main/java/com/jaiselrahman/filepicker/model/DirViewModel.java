@@ -17,8 +17,11 @@
 package com.jaiselrahman.filepicker.model;
 
 import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
@@ -26,36 +29,87 @@ import androidx.paging.LivePagedListBuilder;
 import androidx.paging.PagedList;
 
 import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.FileUtils;
+
+import java.util.List;
 
 public class DirViewModel extends ViewModel {
+    private static final int MAX_CHANGES_TO_APPLY = 32;
+
     public LiveData<PagedList<Dir>> dirs;
 
-    private DirViewModel(ContentResolver contentResolver, Configurations configs) {
-        DirDataSource.Factory dirDataSourceFactory = new DirDataSource.Factory(contentResolver, configs);
+    private Configurations configs;
+    private ContentResolver contentResolver;
+    private MediaRepository repository;
+    private MediaChangeObserver contentObserver;
+
+    private DirViewModel(ContentResolver contentResolver, @Nullable Context context, Configurations configs) {
+        this.contentResolver = contentResolver;
+        this.configs = configs;
+        this.repository = MediaRepository.acquire(configs);
+        final DirDataSource.Factory dirDataSourceFactory = new DirDataSource.Factory(contentResolver, context, configs);
 
         dirs = new LivePagedListBuilder<>(
                 dirDataSourceFactory,
-                new PagedList.Config.Builder()
-                        .setPageSize(Configurations.PAGE_SIZE)
-                        .setInitialLoadSizeHint(15)
-                        .setMaxSize(Configurations.PAGE_SIZE * 3)
-                        .setPrefetchDistance(Configurations.PREFETCH_DISTANCE)
-                        .setEnablePlaceholders(false)
-                        .build()
+                PagingPolicy.of(context, configs).getConfig()
         ).build();
+
+        contentObserver = new MediaChangeObserver(context, configs) {
+            @Override
+            protected void onMediaChanged(List<Uri> uris, int[] flags) {
+                repository.clear();
+                FileUtils.clearNoMediaCache();
+                NoMediaDirs.invalidate();
+                if (uris.size() > MAX_CHANGES_TO_APPLY || !dirDataSourceFactory.updateBuckets(uris)) {
+                    DirIndex.markStale(DirViewModel.this.configs);
+                }
+                invalidate();
+            }
+        };
+        contentResolver.registerContentObserver(dirDataSourceFactory.getUri(), true, contentObserver);
+    }
+
+    @Override
+    protected void onCleared() {
+        contentResolver.unregisterContentObserver(contentObserver);
+        contentObserver.cancel();
+        repository.release();
     }
 
     public void refresh() {
+        repository.clear();
+        FileUtils.clearNoMediaCache();
+        NoMediaDirs.invalidate();
+        DirIndex.markStale(configs);
+        invalidate();
+    }
+
+    private void invalidate() {
         if (dirs.getValue() != null)
             dirs.getValue().getDataSource().invalidate();
     }
 
     public static class Factory extends ViewModelProvider.NewInstanceFactory {
         private ContentResolver contentResolver;
+        private Context context;
         private Configurations configs;
 
+        public Factory(Context context, Configurations configs) {
+            this(context.getContentResolver(), context.getApplicationContext(), configs);
+        }
+
+        /**
+         * @deprecated Use {@link #Factory(Context, Configurations)}, without a Context
+         * folders can't be loaded from the saved bucket index.
+         */
+        @Deprecated
         public Factory(ContentResolver contentResolver, Configurations configs) {
+            this(contentResolver, null, configs);
+        }
+
+        private Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs) {
             this.contentResolver = contentResolver;
+            this.context = context;
             this.configs = configs;
         }
 
@@ -63,7 +117,7 @@ public class DirViewModel extends ViewModel {
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
-            return (T) new DirViewModel(contentResolver, configs);
+            return (T) new DirViewModel(contentResolver, context, configs);
         }
     }
 }
@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.config.IgnorePathMatcher;
+
+/**
+ * Keys identifying the {@link Configurations} options that decide which rows are loaded,
+ * for caching results across data sources.
+ */
+class FilterKey {
+    private static final char SEPARATOR = '\0';
+
+    /**
+     * Key of the options deciding which folders are ignored.
+     */
+    static String ofIgnoreFilters(Configurations configs) {
+        StringBuilder key = new StringBuilder()
+                .append(configs.isIgnoreHiddenFile())
+                .append(configs.isIgnoreNoMediaDir())
+                .append(configs.isNoMediaFromMediaStore());
+        IgnorePathMatcher matcher = configs.getIgnorePathMatcher();
+        if (matcher != null) {
+            for (String pattern : matcher.getPatterns()) {
+                key.append(SEPARATOR).append(pattern);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Key of all the options deciding which files are loaded.
+     */
+    static String of(Configurations configs) {
+        StringBuilder key = new StringBuilder()
+                .append(configs.isShowImages())
+                .append(configs.isShowVideos())
+                .append(configs.isShowAudios())
+                .append(configs.isShowFiles())
+                .append(configs.isSkipZeroSizeFiles())
+                .append(SEPARATOR).append(configs.getRootPath());
+        String[] suffixes = configs.getSuffixes();
+        if (configs.isShowFiles() && suffixes != null) {
+            for (String suffix : suffixes) {
+                key.append(SEPARATOR).append(normalizeSuffix(suffix));
+            }
+        }
+        return key.append(SEPARATOR).append(ofIgnoreFilters(configs)).toString();
+    }
+
+    /**
+     * @return {@code suffix} as it is matched, without dots, so "pdf" and ".pdf" give one key.
+     */
+    static String normalizeSuffix(String suffix) {
+        return suffix.replace(".", "");
+    }
+}
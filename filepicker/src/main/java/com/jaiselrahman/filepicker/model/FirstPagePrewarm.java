@@ -0,0 +1,121 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * First page of files loaded ahead of the picker, while its activity starts. The ignored
+ * folders are computed on the way, so they are cached for the picker too.
+ * <p>
+ * The page is given to the first initial load of all files with the same filter, and only
+ * within {@link #MAX_AGE_MILLIS} of being started.
+ */
+class FirstPagePrewarm {
+    private static final long MAX_AGE_MILLIS = 10000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final HashMap<String, Page> pages = new HashMap<>();
+
+    private static class Page {
+        final Future<List<MediaFile>> files;
+        final int limit;
+        final long startedAt;
+
+        Page(Future<List<MediaFile>> files, int limit) {
+            this.files = files;
+            this.limit = limit;
+            this.startedAt = SystemClock.uptimeMillis();
+        }
+    }
+
+    static void start(Context context, final Configurations configs) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+
+        final Context appContext = context.getApplicationContext();
+        final ContentResolver contentResolver = context.getContentResolver();
+        final int limit = PagingPolicy.of(appContext, configs).getInitialLoadSize();
+        Future<List<MediaFile>> files = executor.submit(new Callable<List<MediaFile>>() {
+            @Override
+            public List<MediaFile> call() {
+                MediaFileQuery query = new MediaFileQuery(contentResolver, appContext,
+                        MediaFileLoader.getContentUri(configs), configs, null);
+                Cursor data = query.query(contentResolver, null, MediaFileQuery.SORT_DESC, limit, 0);
+                return MediaFileLoader.asMediaFiles(data, configs);
+            }
+        });
+
+        synchronized (pages) {
+            pages.put(FilterKey.of(configs), new Page(files, limit));
+        }
+    }
+
+    /**
+     * Takes the prewarmed first {@code limit} files, waiting for them if they are still
+     * loading.
+     *
+     * @return null if there is no page for {@code configs}, or it has fewer files than needed.
+     */
+    @Nullable
+    static List<MediaFile> take(Configurations configs, @Nullable Long dirId, int limit) {
+        if (dirId != null) return null;
+
+        Page page;
+        synchronized (pages) {
+            if (pages.isEmpty()) return null;
+            page = pages.remove(FilterKey.of(configs));
+        }
+        if (page == null || SystemClock.uptimeMillis() - page.startedAt > MAX_AGE_MILLIS) return null;
+
+        List<MediaFile> files;
+        try {
+            files = page.files.get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        // A page shorter than its limit has every file
+        if (files.size() >= limit) return files.subList(0, limit);
+        if (files.size() < page.limit) return files;
+        return null;
+    }
+}
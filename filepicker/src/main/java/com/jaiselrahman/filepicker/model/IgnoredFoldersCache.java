@@ -0,0 +1,300 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContentResolverCompat;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.FileUtils;
+import com.jaiselrahman.filepicker.utils.PathTrie;
+import com.jaiselrahman.filepicker.utils.QueryUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static android.provider.MediaStore.MediaColumns.BUCKET_ID;
+import static android.provider.MediaStore.MediaColumns.DATA;
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
+
+/**
+ * Folders to ignore for each set of ignore filters in {@link Configurations}.
+ * <p>
+ * Finding them scans the whole Files table, so the result is kept across data source
+ * invalidations. On API 30+ it is brought up to date from the rows changed since the
+ * last seen MediaStore generation, otherwise from the uris reported to {@link #onChange}.
+ */
+class IgnoredFoldersCache {
+    private static final HashMap<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Scans for each key run while holding only the lock of its entry, so callers with
+     * other ignore filters don't wait for them.
+     */
+    @NonNull
+    static List<String> get(ContentResolver contentResolver, @Nullable Context context,
+                            Configurations configs) {
+        String key = FilterKey.ofIgnoreFilters(configs);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(configs);
+                entries.put(key, entry);
+            }
+        }
+
+        String version = MediaStoreVersion.getVersion(context);
+        long generation = MediaStoreVersion.getGeneration(context);
+
+        synchronized (entry) {
+            if (entry.folders != null && !entry.dirty && TextUtils.equals(entry.version, version)) {
+                if (entry.generation == generation) {
+                    return entry.folders;
+                }
+                if (entry.generation != NO_GENERATION && generation > entry.generation
+                        && applyChanges(contentResolver, context, entry)) {
+                    entry.generation = generation;
+                    return entry.folders;
+                }
+            }
+
+            PathTrie ignored = new PathTrie();
+            entry.noMediaDirs = generation != NO_GENERATION ? NoMediaDirs.load(contentResolver, context) : null;
+            entry.folders = scan(contentResolver, context, configs, ignored);
+            entry.ignored = ignored;
+            entry.version = version;
+            entry.generation = generation;
+            entry.dirty = false;
+            return entry.folders;
+        }
+    }
+
+    /**
+     * Updates the cached folders for a change reported by a {@link android.database.ContentObserver}.
+     * Entries tracked by generation are left to catch up on their next {@link #get}.
+     *
+     * @param flags {@link ContentResolver#NOTIFY_DELETE} and others, or
+     *              {@link MediaChangeObserver#FLAGS_UNKNOWN}
+     */
+    static void onChange(ContentResolver contentResolver, @Nullable Uri uri, int flags) {
+        List<Entry> entries = getEntries();
+        if (entries.isEmpty()) return;
+
+        long id = MediaFileLoader.getId(uri);
+        if (id < 0) {
+            markDirty(entries);
+            return;
+        }
+
+        boolean deleted = flags != MediaChangeObserver.FLAGS_UNKNOWN && (flags & ContentResolver.NOTIFY_DELETE) != 0;
+        String path = deleted ? null : getPath(contentResolver, id);
+        if (path == null || isNoMediaFile(path)) {
+            // A deleted row may have been a .nomedia, whose folder is not ignored anymore
+            FileUtils.clearNoMediaCache();
+            NoMediaDirs.invalidate();
+            markDirty(entries);
+            return;
+        }
+
+        for (Entry entry : entries) {
+            synchronized (entry) {
+                if (entry.folders == null || entry.generation != NO_GENERATION || entry.dirty) continue;
+                List<String> folders = new ArrayList<>(entry.folders);
+                addIfIgnored(path, entry.configs, NoMediaDirs.get(contentResolver, null, entry.configs),
+                        folders, entry.ignored);
+                entry.folders = folders;
+            }
+        }
+    }
+
+    @NonNull
+    private static List<String> scan(ContentResolver contentResolver, @Nullable Context context,
+                                     Configurations configs, PathTrie ignored) {
+        Uri uri = MediaStore.Files.getContentUri("external");
+
+        String[] projection = new String[]{DATA};
+
+        String selection;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            selection = BUCKET_ID + " IS NOT NULL) GROUP BY (" + BUCKET_ID;
+        } else {
+            selection = BUCKET_ID + " IS NOT NULL";
+        }
+
+        String sortOrder = DATA + " ASC";
+
+        Cursor cursor = ContentResolverCompat.query(
+                contentResolver, uri, projection, selection,
+                null, sortOrder, null
+        );
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
+
+        Set<String> noMediaDirs = NoMediaDirs.get(contentResolver, context, configs);
+
+        int dataColumnIndex = cursor.getColumnIndex(DATA);
+
+        ArrayList<String> folders = new ArrayList<>();
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    addIfIgnored(cursor.getString(dataColumnIndex), configs, noMediaDirs, folders, ignored);
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        cursor.close();
+
+        return folders;
+    }
+
+    /**
+     * Adds folders of rows changed after the entry's generation. Deleted rows are not
+     * returned by MediaStore, so a .nomedia missing from the ones seen at the last scan
+     * is found by loading them again.
+     *
+     * @return false if the entry can't be updated incrementally and has to be scanned again.
+     */
+    private static boolean applyChanges(ContentResolver contentResolver, @Nullable Context context, Entry entry) {
+        Set<String> currentNoMediaDirs = NoMediaDirs.load(contentResolver, context);
+        if (entry.noMediaDirs == null || !currentNoMediaDirs.containsAll(entry.noMediaDirs)) {
+            FileUtils.clearNoMediaCache();
+            return false;
+        }
+
+        Cursor cursor = QueryUtils.query(contentResolver, MediaStore.Files.getContentUri("external"),
+                new String[]{DATA}, MediaStore.MediaColumns.GENERATION_MODIFIED + " > " + entry.generation,
+                null, null, 0, 0);
+        if (cursor == null) {
+            return false;
+        }
+
+        List<String> changedPaths = new ArrayList<>(cursor.getCount());
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    String path = cursor.getString(0);
+                    if (path == null) continue;
+                    if (isNoMediaFile(path)) {
+                        FileUtils.clearNoMediaCache();
+                        NoMediaDirs.invalidate();
+                        return false;
+                    }
+                    changedPaths.add(path);
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        entry.noMediaDirs = currentNoMediaDirs;
+        if (changedPaths.isEmpty()) return true;
+
+        Set<String> noMediaDirs = NoMediaDirs.get(contentResolver, context, entry.configs);
+        List<String> folders = new ArrayList<>(entry.folders);
+        for (String path : changedPaths) {
+            addIfIgnored(path, entry.configs, noMediaDirs, folders, entry.ignored);
+        }
+        entry.folders = folders;
+        return true;
+    }
+
+    private static void addIfIgnored(String path, Configurations configs, @Nullable Set<String> noMediaDirs,
+                                     List<String> folders, PathTrie ignored) {
+        if (path == null) return;
+        String parent = FileUtils.getParent(path);
+        if (!ignored.containsPrefixOf(parent) && FileUtils.toIgnoreFolder(path, configs, noMediaDirs)) {
+            folders.add(parent);
+            ignored.add(parent);
+        }
+    }
+
+    /**
+     * Drops the folders kept for the ignore filters of {@code configs}.
+     */
+    static void evict(Configurations configs) {
+        synchronized (entries) {
+            entries.remove(FilterKey.ofIgnoreFilters(configs));
+        }
+    }
+
+    private static List<Entry> getEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    private static void markDirty(List<Entry> entries) {
+        for (Entry entry : entries) {
+            synchronized (entry) {
+                if (entry.generation == NO_GENERATION)
+                    entry.dirty = true;
+            }
+        }
+    }
+
+    @Nullable
+    private static String getPath(ContentResolver contentResolver, long id) {
+        Uri uri = ContentUris.withAppendedId(MediaStore.Files.getContentUri("external"), id);
+        Cursor cursor = ContentResolverCompat.query(contentResolver, uri, new String[]{DATA},
+                null, null, null, null);
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean isNoMediaFile(String path) {
+        return path.endsWith(File.separator + MediaStore.MEDIA_IGNORE_FILENAME);
+    }
+
+    /**
+     * Guarded by its own lock, folders is null until the first scan.
+     */
+    private static class Entry {
+        private final Configurations configs;
+        private String version;
+        private long generation = NO_GENERATION;
+        private PathTrie ignored;
+        private List<String> folders;
+        // .nomedia directories at the last scan or update, to notice deleted ones on API 30+
+        private Set<String> noMediaDirs;
+        private boolean dirty;
+
+        Entry(Configurations configs) {
+            this.configs = configs;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
+
+/**
+ * Observer that coalesces MediaStore notifications arriving within
+ * {@link Configurations#getChangeDebounceMillis()} into one {@link #onMediaChanged} call.
+ * <p>
+ * Notifications for a collection the filter does not show are dropped. On API 30+, where
+ * notifications say what changed, a batch of only inserts and updates is also dropped when
+ * the MediaStore generation has not moved since the last delivered batch.
+ */
+abstract class MediaChangeObserver extends ContentObserver {
+    // Keep delivering during a long burst of changes at least this many windows apart
+    private static final int MAX_WINDOWS = 4;
+    static final int FLAGS_UNKNOWN = -1;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    @Nullable
+    private final Context context;
+    private final Configurations configs;
+    private final long windowMillis;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Object lock = new Object();
+    private ArrayList<Uri> pending = new ArrayList<>();
+    private ArrayList<Integer> pendingFlags = new ArrayList<>();
+    private boolean mustDeliver;
+    private long firstPendingAt;
+
+    // Seen when the last batch was delivered, the first batch is always delivered
+    private String version;
+    private long generation = NO_GENERATION;
+
+    MediaChangeObserver(@Nullable Context context, Configurations configs) {
+        super(null);
+        this.context = context;
+        this.configs = configs;
+        this.windowMillis = Math.max(configs.getChangeDebounceMillis(), 0);
+    }
+
+    /**
+     * Called on a background thread with the uris changed in the last window, a null uri
+     * stands for an unknown change.
+     *
+     * @param flags {@link ContentResolver#NOTIFY_INSERT} and others for each uri, or
+     *              {@link #FLAGS_UNKNOWN} before API 30
+     */
+    protected abstract void onMediaChanged(List<Uri> uris, int[] flags);
+
+    /**
+     * Stops delivering pending changes, call after unregistering.
+     */
+    void cancel() {
+        handler.removeCallbacks(flush);
+        synchronized (lock) {
+            pending = new ArrayList<>();
+            pendingFlags = new ArrayList<>();
+            mustDeliver = false;
+            firstPendingAt = 0;
+        }
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        onChange(selfChange, null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, @Nullable Uri uri) {
+        addChanges(Collections.singletonList(uri), FLAGS_UNKNOWN);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, @Nullable Uri uri, int flags) {
+        addChanges(Collections.singletonList(uri), flags);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, @NonNull Collection<Uri> uris, int flags) {
+        addChanges(uris, flags);
+    }
+
+    private void addChanges(Collection<Uri> uris, int flags) {
+        long delay;
+        synchronized (lock) {
+            boolean shown = false;
+            for (Uri uri : uris) {
+                if (!isShown(uri)) continue;
+                pending.add(uri);
+                pendingFlags.add(flags);
+                shown = true;
+            }
+            if (!shown) return;
+            if (!isInsertOrUpdate(flags)) {
+                mustDeliver = true;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            if (firstPendingAt == 0) firstPendingAt = now;
+            delay = Math.max(0, Math.min(windowMillis, firstPendingAt + windowMillis * MAX_WINDOWS - now));
+        }
+
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, delay);
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            executor.execute(deliver);
+        }
+    };
+
+    private final Runnable deliver = new Runnable() {
+        @Override
+        public void run() {
+            List<Uri> uris;
+            int[] flags;
+            boolean mustDeliver;
+            synchronized (lock) {
+                if (pending.isEmpty()) return;
+                uris = pending;
+                flags = new int[pendingFlags.size()];
+                for (int i = 0; i < flags.length; i++) {
+                    flags[i] = pendingFlags.get(i);
+                }
+                mustDeliver = MediaChangeObserver.this.mustDeliver;
+                pending = new ArrayList<>();
+                pendingFlags = new ArrayList<>();
+                MediaChangeObserver.this.mustDeliver = false;
+                firstPendingAt = 0;
+            }
+
+            String version = MediaStoreVersion.getVersion(context);
+            long generation = MediaStoreVersion.getGeneration(context);
+            if (!mustDeliver && generation != NO_GENERATION && generation == MediaChangeObserver.this.generation
+                    && TextUtils.equals(version, MediaChangeObserver.this.version)) {
+                return;
+            }
+            MediaChangeObserver.this.version = version;
+            MediaChangeObserver.this.generation = generation;
+
+            onMediaChanged(uris, flags);
+        }
+    };
+
+    private static boolean isInsertOrUpdate(int flags) {
+        return flags != FLAGS_UNKNOWN
+                && (flags & ContentResolver.NOTIFY_DELETE) == 0
+                && (flags & (ContentResolver.NOTIFY_INSERT | ContentResolver.NOTIFY_UPDATE)) != 0;
+    }
+
+    /**
+     * @return false if {@code uri} is in a collection the filter does not show.
+     */
+    private boolean isShown(@Nullable Uri uri) {
+        if (uri == null) return true;
+        // content://media/<volume>/<collection>/...
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() < 2) return true;
+
+        String collection = segments.get(1);
+        if ("images".equals(collection)) return configs.isShowImages();
+        if ("video".equals(collection)) return configs.isShowVideos();
+        if ("audio".equals(collection)) return configs.isShowAudios();
+        return true;
+    }
+}
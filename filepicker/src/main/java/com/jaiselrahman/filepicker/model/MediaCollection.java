@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MediaStore collection ({@code Images.Media}, {@code Video.Media} or {@code Audio.Media})
+ * with the columns it has beyond the ones every collection shares.
+ */
+class MediaCollection {
+    private static final String[] COMMON_PROJECTION = {
+            MediaStore.MediaColumns._ID,
+            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.SIZE,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.BUCKET_ID,
+            MediaStore.MediaColumns.BUCKET_DISPLAY_NAME,
+    };
+
+    final Uri uri;
+    final String[] projection;
+
+    private MediaCollection(Uri uri, String... columns) {
+        this.uri = uri;
+        this.projection = new String[COMMON_PROJECTION.length + columns.length];
+        System.arraycopy(COMMON_PROJECTION, 0, projection, 0, COMMON_PROJECTION.length);
+        System.arraycopy(columns, 0, projection, COMMON_PROJECTION.length, columns.length);
+    }
+
+    /**
+     * @return whether files can be loaded from each collection and merged, instead of from
+     * {@code MediaStore.Files}. Only on Q+, where the collections have bucket columns, and
+     * only for more than one kind of media without other files.
+     */
+    static boolean canMerge(Configurations configs) {
+        if (!configs.isMergeCollections() || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || configs.isShowFiles()) {
+            return false;
+        }
+        int kinds = (configs.isShowImages() ? 1 : 0)
+                + (configs.isShowVideos() ? 1 : 0)
+                + (configs.isShowAudios() ? 1 : 0);
+        return kinds > 1;
+    }
+
+    static List<MediaCollection> of(Configurations configs) {
+        List<MediaCollection> collections = new ArrayList<>(3);
+        if (configs.isShowImages()) {
+            collections.add(new MediaCollection(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    MediaStore.MediaColumns.HEIGHT,
+                    MediaStore.MediaColumns.WIDTH));
+        }
+        if (configs.isShowVideos()) {
+            collections.add(new MediaCollection(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                    MediaStore.MediaColumns.HEIGHT,
+                    MediaStore.MediaColumns.WIDTH,
+                    MediaStore.Video.Media.DURATION));
+        }
+        if (configs.isShowAudios()) {
+            collections.add(new MediaCollection(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    MediaStore.Audio.Media.DURATION,
+                    MediaStore.Audio.Media.ALBUM_ID));
+        }
+        return collections;
+    }
+}
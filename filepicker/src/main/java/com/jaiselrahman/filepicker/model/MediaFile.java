@@ -16,6 +16,7 @@
 
 package com.jaiselrahman.filepicker.model;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -40,17 +41,24 @@ public class MediaFile implements Parcelable {
             return new MediaFile[size];
         }
     };
+
+    private static final Uri ALBUM_ART_URI = Uri.parse("content://media/external/audio/albumart");
+
     private long id, size, duration, date;
     private long height, width;
     private String name;
     private Uri uri;
     private Uri thumbnail;
+    // Shared by all rows of a query, uri and thumbnail are only built from these when read
+    private Uri contentUri;
+    private long albumId = -1;
     private String path;
     private String mimeType;
     private String bucketId;
     private String bucketName;
     private @Type
     int mediaType;
+    private boolean skeleton;
 
     public MediaFile() {
     }
@@ -70,6 +78,9 @@ public class MediaFile implements Parcelable {
         bucketId = in.readString();
         bucketName = in.readString();
         mediaType = in.readInt();
+        // Not written, to keep the parcel format. Skeleton rows have no path and size, and
+        // their name is empty as it comes from the path
+        skeleton = path == null && size == 0 && (name == null || name.isEmpty());
     }
 
     @Override
@@ -81,8 +92,8 @@ public class MediaFile implements Parcelable {
         dest.writeLong(height);
         dest.writeLong(width);
         dest.writeString(name);
-        dest.writeParcelable(uri, flags);
-        dest.writeParcelable(thumbnail, flags);
+        dest.writeParcelable(getUri(), flags);
+        dest.writeParcelable(getThumbnail(), flags);
         dest.writeString(path);
         dest.writeString(mimeType);
         dest.writeString(bucketId);
@@ -96,13 +107,48 @@ public class MediaFile implements Parcelable {
     }
 
     public Uri getThumbnail() {
+        if (thumbnail == null && albumId >= 0) {
+            thumbnail = ContentUris.withAppendedId(ALBUM_ART_URI, albumId);
+        }
         return thumbnail;
     }
 
     public Uri getUri() {
+        if (uri == null && contentUri != null) {
+            uri = ContentUris.withAppendedId(contentUri, id);
+        }
         return uri;
     }
 
+    /**
+     * Sets the collection this file belongs to, {@link #getUri()} is then built from it and the id.
+     */
+    void setContentUri(Uri contentUri) {
+        this.contentUri = contentUri;
+    }
+
+    /**
+     * Sets the audio album, {@link #getThumbnail()} is then built from it.
+     */
+    void setAlbumId(long albumId) {
+        this.albumId = albumId;
+    }
+
+    long getAlbumId() {
+        return albumId;
+    }
+
+    /**
+     * @return whether only the id, date, bucket and media type are loaded.
+     */
+    boolean isSkeleton() {
+        return skeleton;
+    }
+
+    void setSkeleton(boolean skeleton) {
+        this.skeleton = skeleton;
+    }
+
     public void setUri(Uri uri) {
         this.uri = uri;
     }
@@ -212,12 +258,12 @@ public class MediaFile implements Parcelable {
     @Override
     public boolean equals(Object obj) {
         return this == obj
-                || obj instanceof MediaFile && this.uri.equals(((MediaFile) obj).uri);
+                || obj instanceof MediaFile && this.id == ((MediaFile) obj).id;
     }
 
     @Override
     public int hashCode() {
-        return path.hashCode();
+        return (int) (id ^ (id >>> 32));
     }
 
     @IntDef({TYPE_FILE, TYPE_IMAGE, TYPE_AUDIO, TYPE_VIDEO})
@@ -17,254 +17,143 @@
 package com.jaiselrahman.filepicker.model;
 
 import android.content.ContentResolver;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Build;
-import android.provider.MediaStore;
 
 import androidx.annotation.NonNull;
-import androidx.core.content.ContentResolverCompat;
+import androidx.annotation.Nullable;
 import androidx.paging.DataSource;
 import androidx.paging.PositionalDataSource;
 
 import com.jaiselrahman.filepicker.config.Configurations;
-import com.jaiselrahman.filepicker.utils.FileUtils;
 
-import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_AUDIO;
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_NONE;
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
-import static android.provider.MediaStore.MediaColumns.BUCKET_ID;
-import static android.provider.MediaStore.MediaColumns.DATA;
-import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
-import static android.provider.MediaStore.MediaColumns.DISPLAY_NAME;
-import static android.provider.MediaStore.MediaColumns.SIZE;
-
 public class MediaFileDataSource extends PositionalDataSource<MediaFile> {
 
     private Configurations configs;
     private ContentResolver contentResolver;
+    private Context context;
+
+    private MediaFileQuery query;
+    private Long dirId;
+    @Nullable
+    private MediaRepository repository;
+    @Nullable
+    private MediaFileIndex index;
+    private boolean counted;
 
-    private String[] projection;
-    private String sortOrder;
-    private String selection;
-    private String[] selectionArgs;
-    private Uri uri;
+    private final Runnable onIndexRefreshed = new Runnable() {
+        @Override
+        public void run() {
+            if (repository != null) repository.clear();
+            invalidate();
+        }
+    };
 
-    private MediaFileDataSource(ContentResolver contentResolver, Uri uri, @NonNull Configurations configs, Long dirId) {
+    private MediaFileDataSource(ContentResolver contentResolver, @Nullable Context context, Uri uri,
+                                 @NonNull Configurations configs, Long dirId) {
         this.contentResolver = contentResolver;
+        this.context = context;
         this.configs = configs;
-        this.uri = uri;
-
-        StringBuilder selectionBuilder = new StringBuilder(100);
-
-        ArrayList<String> selectionArgs = new ArrayList<>();
-
-        String rootPath = configs.getRootPath();
-        if (rootPath != null) {
-            selectionBuilder.append(DATA).append(" LIKE ? and ");
-            if (!rootPath.endsWith(File.separator)) rootPath += File.separator;
-            selectionArgs.add(rootPath + "%");
-        }
+        this.query = new MediaFileQuery(contentResolver, context, uri, configs, dirId);
+        this.dirId = dirId;
+        this.repository = MediaRepository.get(configs);
+    }
 
-        if (dirId != null) {
-            if (selectionBuilder.length() != 0)
-                selectionBuilder.append(" and ");
-            selectionBuilder.append(BUCKET_ID).append("=").append(dirId).append(" and ");
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<MediaFile> callback) {
+        if (dirId == null) {
+            // Counted rows must match the index, so an outdated one is only shown without placeholders
+            index = MediaFileIndex.open(context, contentResolver, configs, !params.placeholdersEnabled,
+                    onIndexRefreshed);
         }
 
-        if (canUseMediaType(configs)) {
-
-            selectionBuilder.append("(");
-
-            if (configs.isShowImages()) {
-                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
-                    selectionBuilder.append(" or ");
-                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_IMAGE);
-            }
-
-            if (configs.isShowVideos()) {
-                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
-                    selectionBuilder.append(" or ");
-                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_VIDEO);
+        if (params.placeholdersEnabled) {
+            int totalCount = query.count(contentResolver);
+            if (totalCount < 0) {
+                // Couldn't count, list only the first page
+                List<MediaFile> mediaFiles = getMediaFiles(0, params.requestedLoadSize);
+                callback.onResult(mediaFiles, 0, mediaFiles.size());
+                return;
             }
 
-            if (configs.isShowAudios()) {
-                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
-                    selectionBuilder.append(" or ");
-                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_AUDIO);
+            int position = computeInitialLoadPosition(params, totalCount);
+            int loadSize = computeInitialLoadSize(params, position, totalCount);
+            List<MediaFile> mediaFiles = getMediaFiles(position, loadSize);
+            if (mediaFiles.size() != loadSize) {
+                // Changed since counting, the result is dropped once invalid
+                invalidate();
             }
-
-            if (configs.isShowFiles()) {
-                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
-                    selectionBuilder.append(" or ");
-
-                String[] suffixes = configs.getSuffixes();
-                if (suffixes != null && suffixes.length > 0) {
-                    appendFileSelection(selectionBuilder, selectionArgs, suffixes);
-                } else {
-                    appendDefaultFileSelection(selectionBuilder);
-                }
-            }
-            selectionBuilder.append(") and ");
-        }
-
-        if (configs.isSkipZeroSizeFiles()) {
-            selectionBuilder.append(SIZE).append(" > 0 ");
-        }
-
-        List<String> projection = new ArrayList<>(MediaFileLoader.FILE_PROJECTION);
-
-        if (canUseMediaType(configs)) {
-            projection.add(MediaStore.Files.FileColumns.MEDIA_TYPE);
-        }
-
-        if (canUseAlbumId(configs)) {
-            projection.add(MediaStore.Audio.AudioColumns.ALBUM_ID);
+            counted = true;
+            callback.onResult(mediaFiles, position, totalCount);
+            return;
         }
 
-        List<String> folders = getFoldersToIgnore(contentResolver, configs);
-        if (folders.size() > 0) {
-            selectionBuilder.append(" and(").append(DATA).append(" NOT LIKE ? ");
-            selectionArgs.add(folders.get(0) + "%");
-            int size = folders.size();
-            for (int i = 1; i < size; i++) {
-                selectionBuilder.append(" and ").append(DATA).append(" NOT LIKE ? ");
-                selectionArgs.add(folders.get(i) + "%");
-            }
-            selectionBuilder.append(")");
-        }
-
-        this.projection = projection.toArray(new String[0]);
-        this.sortOrder = DATE_ADDED + " DESC";
-        this.selection = selectionBuilder.toString();
-        this.selectionArgs = selectionArgs.toArray(new String[0]);
-    }
-
-    @Override
-    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<MediaFile> callback) {
-        callback.onResult(getMediaFiles(params.requestedStartPosition, params.requestedLoadSize), 0);
+        callback.onResult(getMediaFiles(params.requestedStartPosition, params.requestedLoadSize),
+                params.requestedStartPosition);
     }
 
     @Override
     public void loadRange(@NonNull LoadRangeParams params, @NonNull LoadRangeCallback<MediaFile> callback) {
-        callback.onResult(getMediaFiles(params.startPosition, params.loadSize));
+        List<MediaFile> mediaFiles = getMediaFiles(params.startPosition, params.loadSize);
+        if (counted && mediaFiles.size() < params.loadSize) {
+            // Every range is within the counted rows, fewer means they changed
+            invalidate();
+        }
+        callback.onResult(mediaFiles);
     }
 
     private List<MediaFile> getMediaFiles(int offset, int limit) {
-        Cursor data = ContentResolverCompat.query(contentResolver, uri, projection,
-                selection, selectionArgs,
-                sortOrder + " LIMIT " + limit + " OFFSET " + offset, null);
-
-        return MediaFileLoader.asMediaFiles(data, configs);
-    }
-
-    private static boolean canUseAlbumId(Configurations configs) {
-        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q ||
-                (configs.isShowAudios() && !(configs.isShowFiles() || configs.isShowImages() || configs.isShowVideos()));
-    }
-
-    private static boolean canUseMediaType(Configurations configs) {
-        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q ||
-                (!configs.isShowAudios() && (configs.isShowFiles() || configs.isShowImages() || configs.isShowVideos()));
-    }
-
-    @NonNull
-    private static List<String> getFoldersToIgnore(ContentResolver contentResolver, Configurations configs) {
-        Uri uri = MediaStore.Files.getContentUri("external");
-
-        String[] projection = new String[]{DATA};
-
-        String selection;
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
-            selection = BUCKET_ID + " IS NOT NULL) GROUP BY (" + BUCKET_ID;
-        } else {
-            selection = BUCKET_ID + " IS NOT NULL";
+        List<MediaFile> mediaFiles = null;
+        if (offset == 0) {
+            mediaFiles = FirstPagePrewarm.take(configs, dirId, limit);
         }
-
-        String sortOrder = DATA + " ASC";
-
-        Cursor cursor = ContentResolverCompat.query(
-                contentResolver, uri, projection, selection,
-                null, sortOrder, null
-        );
-        if (cursor == null) {
-            return new ArrayList<>();
+        if (mediaFiles == null && repository != null) {
+            mediaFiles = repository.get(dirId, offset, limit);
         }
-
-        int dataColumnIndex = cursor.getColumnIndex(DATA);
-
-        ArrayList<String> folders = new ArrayList<>();
-        try {
-            if (cursor.moveToFirst()) {
-                do {
-                    String path = cursor.getString(dataColumnIndex);
-                    String parent = FileUtils.getParent(path);
-                    if (!isExcluded(parent, folders) && FileUtils.toIgnoreFolder(path, configs)) {
-                        folders.add(parent);
-                    }
-                } while (cursor.moveToNext());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (mediaFiles == null && index != null) {
+            mediaFiles = index.get(offset, limit);
         }
-        cursor.close();
-
-        return folders;
-    }
-
-    static void appendDefaultFileSelection(StringBuilder selection) {
-        selection.append("(")
-                .append("(")
-                .append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_NONE)
-                .append(" or ")
-                .append(MEDIA_TYPE).append(" > ").append(MEDIA_TYPE_VIDEO)
-                .append(")and ")
-                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" <> 'resource/folder'")
-                .append(" and ")
-                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'image/%'")
-                .append(" and ")
-                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'video/%'")
-                .append(" and ")
-                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'audio/%'")
-                .append(")");
-    }
-
-    static void appendFileSelection(StringBuilder selectionBuilder, List<String> selectionArgs, String[] suffixes) {
-        selectionBuilder.append("(").append(DISPLAY_NAME).append(" LIKE ?");
-        selectionArgs.add("%." + suffixes[0].replace(".", ""));
-
-        int size = suffixes.length;
-        for (int i = 1; i < size; i++) {
-            selectionBuilder.append(" or ").append(DISPLAY_NAME).append(" LIKE ?");
-            suffixes[i] = suffixes[i].replace(".", "");
-            selectionArgs.add("%." + suffixes[i]);
+        boolean skeletons = false;
+        if (mediaFiles == null) {
+            mediaFiles = queryMediaFiles(offset, limit);
+            skeletons = MediaFileLoader.useSkeletons(configs);
         }
 
-        selectionBuilder.append(")");
+        // Other screens may not fill in skeletons
+        if (repository != null && !skeletons) repository.put(dirId, offset, mediaFiles, limit);
+        return mediaFiles;
     }
 
-    private static boolean isExcluded(String path, List<String> ignoredPaths) {
-        for (String p : ignoredPaths) {
-            if (path.startsWith(p)) return true;
-        }
-        return false;
+    private List<MediaFile> queryMediaFiles(final int offset, final int limit) {
+        final boolean skeleton = MediaFileLoader.useSkeletons(configs);
+        final String[] projection = skeleton ? MediaFileLoader.getSkeletonProjection(configs) : query.projection;
+        String kind = MediaFileLoader.getQueryKind("files", configs);
+        String key = query.getKey(kind, projection, null, MediaFileQuery.SORT_DESC, limit, offset);
+        return QueryExecutor.execute(key, new QueryExecutor.Loader<List<MediaFile>>() {
+            @Override
+            public List<MediaFile> load() {
+                Cursor data = query.query(contentResolver, projection, null, MediaFileQuery.SORT_DESC, limit, offset);
+                return skeleton
+                        ? MediaFileLoader.asSkeletons(data, configs, false)
+                        : MediaFileLoader.asMediaFiles(data, configs);
+            }
+        });
     }
 
     public static class Factory extends DataSource.Factory<Integer, MediaFile> {
         private ContentResolver contentResolver;
+        private Context context;
         private Configurations configs;
         private Long dirId;
 
         private Uri uri;
 
-        Factory(ContentResolver contentResolver, Configurations configs, Long dirId) {
+        Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs, Long dirId) {
             this.contentResolver = contentResolver;
+            this.context = context;
             this.configs = configs;
             this.dirId = dirId;
 
@@ -275,10 +164,19 @@ public class MediaFileDataSource extends PositionalDataSource<MediaFile> {
             return uri;
         }
 
+        /**
+         * @return files per month in the order of the data sources, or null if the query failed.
+         */
+        @Nullable
+        MonthHistogram getMonthHistogram() {
+            return MonthHistogram.query(contentResolver,
+                    new MediaFileQuery(contentResolver, context, uri, configs, dirId));
+        }
+
         @NonNull
         @Override
         public DataSource<Integer, MediaFile> create() {
-            return new MediaFileDataSource(contentResolver, uri, configs, dirId);
+            return new MediaFileDataSource(contentResolver, context, uri, configs, dirId);
         }
     }
 }
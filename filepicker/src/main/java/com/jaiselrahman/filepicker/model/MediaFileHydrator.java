@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static android.provider.BaseColumns._ID;
+
+/**
+ * Fills in skeleton files loaded with {@link Configurations#isSkeletonPages()}. Files bound
+ * during the same frame are loaded with a single {@code _ID IN (...)} query, so only the
+ * rows on screen are loaded in full.
+ * <p>
+ * Skeletons may be shared with other lists, so they are not changed. The rows loaded in
+ * full are kept here instead and shown in their place through {@link #get}.
+ */
+public class MediaFileHydrator {
+    // Keeps the IN clause well under the SQL length limit
+    private static final int MAX_BATCH = 500;
+    // A few screens of rows, older ones are loaded again when bound
+    private static final int MAX_LOADED = 1000;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    private final ContentResolver contentResolver;
+    private final Configurations configs;
+    private final Uri uri;
+    private final String[] projection;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Rows loaded in full by id, or the skeleton itself if its row was deleted
+    private final LruCache<Long, MediaFile> loaded = new LruCache<>(MAX_LOADED);
+    private final Set<Long> requested = new HashSet<>();
+    private List<MediaFile> pending = new ArrayList<>();
+    private int firstPosition;
+    private int lastPosition;
+    // Changed by clear, so rows loaded before it are dropped
+    private int generation;
+    @Nullable
+    private OnHydratedListener onHydratedListener;
+
+    public interface OnHydratedListener {
+        /**
+         * Called on the main thread once the files requested at these positions are filled in.
+         */
+        void onHydrated(int position, int count);
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the files, skeletons replaced by the rows loaded in full.
+         */
+        void onResult(ArrayList<MediaFile> mediaFiles);
+    }
+
+    MediaFileHydrator(ContentResolver contentResolver, Configurations configs) {
+        this.contentResolver = contentResolver;
+        this.configs = configs;
+        this.uri = MediaFileLoader.getContentUri(configs);
+        this.projection = MediaFileLoader.getFileProjection(configs).toArray(new String[0]);
+    }
+
+    public void setOnHydratedListener(@Nullable OnHydratedListener onHydratedListener) {
+        this.onHydratedListener = onHydratedListener;
+    }
+
+    /**
+     * @return the row loaded in full for {@code mediaFile} if it is a skeleton and was filled
+     * in, otherwise {@code mediaFile}. Call on the main thread.
+     */
+    public MediaFile get(MediaFile mediaFile) {
+        if (!mediaFile.isSkeleton()) return mediaFile;
+        MediaFile hydrated = loaded.get(mediaFile.getId());
+        return hydrated != null ? hydrated : mediaFile;
+    }
+
+    /**
+     * Queues {@code mediaFile}, bound at {@code position}, to be filled in with the other
+     * files bound in this frame. Does nothing if it is not a skeleton. Call on the main thread.
+     */
+    public void request(MediaFile mediaFile, int position) {
+        long id = mediaFile.getId();
+        if (!mediaFile.isSkeleton() || loaded.get(id) != null || !requested.add(id)) return;
+
+        if (pending.isEmpty()) {
+            firstPosition = position;
+            lastPosition = position;
+            handler.post(flush);
+        } else {
+            firstPosition = Math.min(firstPosition, position);
+            lastPosition = Math.max(lastPosition, position);
+        }
+        pending.add(mediaFile);
+    }
+
+    /**
+     * Fills in the skeletons of {@code mediaFiles} on a background thread, like before
+     * returning them. Call on the main thread, {@code callback} is called right away if
+     * there is nothing to load.
+     */
+    public void hydrate(List<MediaFile> mediaFiles, final Callback callback) {
+        final ArrayList<MediaFile> result = new ArrayList<>(mediaFiles.size());
+        final List<MediaFile> skeletons = new ArrayList<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            MediaFile hydrated = get(mediaFile);
+            result.add(hydrated);
+            if (hydrated.isSkeleton()) skeletons.add(hydrated);
+        }
+        if (skeletons.isEmpty()) {
+            callback.onResult(result);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final HashMap<Long, MediaFile> rows = load(skeletons);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Skeletons that couldn't be loaded are returned as they are
+                        for (int i = 0; rows != null && i < result.size(); i++) {
+                            MediaFile row = rows.get(result.get(i).getId());
+                            if (row != null) result.set(i, row);
+                        }
+                        callback.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the rows loaded so far, like after MediaStore changed. Can be called from any thread.
+     */
+    void clear() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                generation++;
+                loaded.evictAll();
+                requested.clear();
+            }
+        });
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            final List<MediaFile> batch = pending;
+            final int position = firstPosition;
+            final int count = lastPosition - firstPosition + 1;
+            final int batchGeneration = generation;
+            pending = new ArrayList<>();
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final HashMap<Long, MediaFile> rows = load(batch);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (batchGeneration != generation) return;
+                            for (MediaFile skeleton : batch) {
+                                requested.remove(skeleton.getId());
+                                // Requested again when bound if the query failed
+                                if (rows == null) continue;
+                                MediaFile row = rows.get(skeleton.getId());
+                                // A deleted row is kept as is, but not requested again
+                                loaded.put(skeleton.getId(), row != null ? row : skeleton);
+                            }
+                            if (onHydratedListener != null) {
+                                onHydratedListener.onHydrated(position, count);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    };
+
+    /**
+     * @return the rows of {@code skeletons} loaded in full, by id, or null if the query failed,
+     * like when the storage permission was revoked.
+     */
+    @Nullable
+    private HashMap<Long, MediaFile> load(List<MediaFile> skeletons) {
+        try {
+            return query(skeletons);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private HashMap<Long, MediaFile> query(List<MediaFile> skeletons) {
+        HashMap<Long, MediaFile> loaded = new HashMap<>(skeletons.size());
+        for (int start = 0; start < skeletons.size(); start += MAX_BATCH) {
+            int end = Math.min(start + MAX_BATCH, skeletons.size());
+            StringBuilder selection = new StringBuilder(_ID).append(" IN (");
+            for (int i = start; i < end; i++) {
+                if (i > start) selection.append(", ");
+                selection.append(skeletons.get(i).getId());
+            }
+            selection.append(")");
+
+            Cursor data = QueryUtils.query(contentResolver, uri, projection,
+                    selection.toString(), null, null, 0, 0);
+            if (data == null) continue;
+            try {
+                MediaFileRowMapper rowMapper = new MediaFileRowMapper(data, configs, uri);
+                while (data.moveToNext()) {
+                    MediaFile mediaFile = rowMapper.map(data, null);
+                    if (mediaFile != null) loaded.put(mediaFile.getId(), mediaFile);
+                }
+            } finally {
+                data.close();
+            }
+        }
+        return loaded;
+    }
+}
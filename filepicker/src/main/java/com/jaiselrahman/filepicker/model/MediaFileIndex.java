@@ -0,0 +1,580 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static android.provider.BaseColumns._ID;
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
+
+/**
+ * The newest files of a set of filters, saved to the cache dir so the next picker can show
+ * them before MediaStore is queried.
+ * <p>
+ * The file is mapped and rows are decoded only when a page is requested. Each row is a
+ * fixed size record sorted like {@link MediaFileQuery#SORT_DESC}, its strings are indexes
+ * into a table of distinct strings, so bucket names and mime types are stored once.
+ * <p>
+ * Like {@link DirIndex}, an index is current when the MediaStore generation it was built at
+ * is still the latest. From R on, an older index is synced instead of rebuilt: only rows
+ * modified after its generation are queried, and deleted rows are found by querying which
+ * of its ids still match. An index read from disk that can't be checked is shown once and
+ * rebuilt in the background.
+ */
+class MediaFileIndex {
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_PREFIX = "filepicker_files_";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Past this many files, pages are loaded from MediaStore
+    private static final int MAX_ROWS = 2000;
+
+    private static final int ID = 0;
+    private static final int DATE = 8;
+    private static final int SIZE = 16;
+    private static final int DURATION = 24;
+    private static final int ALBUM_ID = 32;
+    private static final int HEIGHT = 40;
+    private static final int WIDTH = 44;
+    private static final int MEDIA_TYPE = 48;
+    private static final int NAME = 52;
+    private static final int PATH = 56;
+    private static final int MIME_TYPE = 60;
+    private static final int BUCKET_ID = 64;
+    private static final int BUCKET_NAME = 68;
+    private static final int RECORD_SIZE = 72;
+
+    private static final HashMap<String, MediaFileIndex> indexes = new HashMap<>();
+    private static final HashMap<String, List<Runnable>> refreshing = new HashMap<>();
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    private static class Rows {
+        final List<MediaFile> files;
+        boolean complete;
+
+        Rows(List<MediaFile> files, boolean complete) {
+            this.files = files;
+            this.complete = complete;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Uri contentUri;
+    private final String version;
+    private final long generation;
+    private final boolean complete;
+    private final int size;
+    private final int recordsStart;
+    private final int stringsStart;
+    private final int stringBytesStart;
+    private final String[] strings;
+    private boolean verified;
+    private volatile boolean stale;
+
+    private MediaFileIndex(ByteBuffer buffer, Uri contentUri, @Nullable String version, long generation,
+                           boolean complete, int size, int stringCount) {
+        this.buffer = buffer;
+        this.contentUri = contentUri;
+        this.version = version;
+        this.generation = generation;
+        this.complete = complete;
+        this.size = size;
+        this.recordsStart = buffer.position();
+        this.stringsStart = recordsStart + size * RECORD_SIZE;
+        this.stringBytesStart = stringsStart + (stringCount + 1) * 4;
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * @param canBeOutdated whether an index that can't be checked yet may be returned,
+     *                      {@code onRefreshed} is then run once it is rebuilt.
+     * @return the index to load the newest files of {@code configs} from, or null to query
+     * MediaStore.
+     */
+    @Nullable
+    static MediaFileIndex open(@Nullable Context context, ContentResolver contentResolver,
+                               Configurations configs, boolean canBeOutdated, Runnable onRefreshed) {
+        if (context == null || !configs.isPersistentIndex()) return null;
+
+        MediaFileIndex index = get(context, configs);
+        String version = MediaStoreVersion.getVersion(context);
+        long generation = MediaStoreVersion.getGeneration(context);
+        if (index != null && index.isCurrent(version, generation)) {
+            return index;
+        }
+        if (index != null && index.canUpdate(version, generation)) {
+            // Only changed rows are queried, cheap enough to wait for
+            MediaFileIndex synced = refreshNow(context, contentResolver, configs);
+            if (synced != null) return synced;
+        }
+        if (index != null && canBeOutdated && !index.stale) {
+            refresh(context, contentResolver, configs, onRefreshed);
+            return index;
+        }
+        refresh(context, contentResolver, configs, null);
+        return null;
+    }
+
+    /**
+     * Marks the in-memory index as changed in a way its generation may not show, like a deletion.
+     */
+    static synchronized void markStale(Configurations configs) {
+        MediaFileIndex index = indexes.get(FilterKey.of(configs));
+        if (index != null) index.stale = true;
+    }
+
+    @Nullable
+    private static synchronized MediaFileIndex get(Context context, Configurations configs) {
+        String key = FilterKey.of(configs);
+        MediaFileIndex index = indexes.get(key);
+        if (index == null) {
+            index = read(getFile(context, key), key, MediaFileLoader.getContentUri(configs));
+            if (index != null) indexes.put(key, index);
+        }
+        return index;
+    }
+
+    private static void refresh(final Context context, final ContentResolver contentResolver,
+                                final Configurations configs, @Nullable Runnable onRefreshed) {
+        final String key = FilterKey.of(configs);
+        if (!startRefresh(key, onRefreshed)) return;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MediaFileIndex index = null;
+                try {
+                    index = build(context, contentResolver, configs, key);
+                } finally {
+                    finishRefresh(key, index != null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Refreshes the index on the calling thread.
+     *
+     * @return null if it is already being refreshed, or couldn't be.
+     */
+    @Nullable
+    private static MediaFileIndex refreshNow(Context context, ContentResolver contentResolver,
+                                             Configurations configs) {
+        String key = FilterKey.of(configs);
+        if (!startRefresh(key, null)) return null;
+        MediaFileIndex index = null;
+        try {
+            index = build(context, contentResolver, configs, key);
+            return index;
+        } finally {
+            finishRefresh(key, index != null);
+        }
+    }
+
+    /**
+     * @return false if the index of {@code key} is already being refreshed,
+     * {@code onRefreshed} is then run once that is done.
+     */
+    private static boolean startRefresh(String key, @Nullable Runnable onRefreshed) {
+        synchronized (refreshing) {
+            List<Runnable> callbacks = refreshing.get(key);
+            boolean started = callbacks == null;
+            if (started) {
+                callbacks = new ArrayList<>();
+                refreshing.put(key, callbacks);
+            }
+            if (onRefreshed != null) callbacks.add(onRefreshed);
+            return started;
+        }
+    }
+
+    /**
+     * @param refreshed whether a new index was stored. Otherwise callbacks aren't run, as
+     * reloading would open the same index and refresh it again, like while the disk is full.
+     */
+    private static void finishRefresh(String key, boolean refreshed) {
+        List<Runnable> callbacks;
+        synchronized (refreshing) {
+            callbacks = refreshing.remove(key);
+        }
+        if (!refreshed) return;
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    @Nullable
+    private static MediaFileIndex build(Context context, ContentResolver contentResolver,
+                                        Configurations configs, String key) {
+        // Read before querying, so changes made meanwhile leave the index outdated
+        String version = MediaStoreVersion.getVersion(context);
+        long generation = MediaStoreVersion.getGeneration(context);
+
+        Uri contentUri = MediaFileLoader.getContentUri(configs);
+        MediaFileQuery query = new MediaFileQuery(contentResolver, context, contentUri, configs, null);
+
+        MediaFileIndex index;
+        synchronized (MediaFileIndex.class) {
+            index = indexes.get(key);
+        }
+        Rows rows = null;
+        if (index != null && index.canUpdate(version, generation)) {
+            rows = index.sync(contentResolver, query, configs);
+        }
+        if (rows == null) {
+            Cursor data = query.query(contentResolver, null, MediaFileQuery.SORT_DESC, MAX_ROWS, 0);
+            if (data == null) return null;
+            rows = new Rows(MediaFileLoader.asMediaFiles(data, configs), false);
+            rows.complete = rows.files.size() < MAX_ROWS;
+        }
+
+        File file = getFile(context, key);
+        if (!write(file, key, version, generation, rows.files, rows.complete)) return null;
+
+        index = read(file, key, contentUri);
+        if (index == null) return null;
+        index.verified = true;
+        synchronized (MediaFileIndex.class) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return whether the index can be used as is. Without a generation to compare, only an
+     * index built by this process and not marked stale since is.
+     */
+    private synchronized boolean isCurrent(@Nullable String version, long generation) {
+        if (stale || !TextUtils.equals(this.version, version)) return false;
+        if (generation != NO_GENERATION) return generation == this.generation;
+        return verified;
+    }
+
+    /**
+     * @return whether rows changed after this index was built can be found by generation.
+     */
+    private synchronized boolean canUpdate(@Nullable String version, long generation) {
+        return TextUtils.equals(this.version, version)
+                && this.generation != NO_GENERATION
+                && generation > this.generation;
+    }
+
+    /**
+     * @return the rows of this index with the rows changed since merged in, or null if the
+     * index has to be rebuilt.
+     */
+    @Nullable
+    private synchronized Rows sync(ContentResolver contentResolver, MediaFileQuery query,
+                                   Configurations configs) {
+        Cursor data = query.query(contentResolver,
+                MediaStore.MediaColumns.GENERATION_MODIFIED + " > " + generation,
+                MediaFileQuery.SORT_DESC, MAX_ROWS, 0);
+        if (data == null) return null;
+        List<MediaFile> changed = MediaFileLoader.asMediaFiles(data, configs);
+        // Rebuilding is cheaper than merging this many
+        if (changed.size() >= MAX_ROWS) return null;
+
+        Set<Long> kept = new HashSet<>(size);
+        if (size > 0) {
+            StringBuilder clause = new StringBuilder(_ID).append(" IN (");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) clause.append(", ");
+                clause.append(buffer.getLong(record(i) + ID));
+            }
+            kept = query.queryIds(contentResolver, clause.append(")").toString());
+            if (kept == null) return null;
+        }
+
+        Set<Long> changedIds = new HashSet<>(changed.size());
+        for (MediaFile mediaFile : changed) {
+            changedIds.add(mediaFile.getId());
+        }
+
+        List<MediaFile> mediaFiles = new ArrayList<>(size + changed.size());
+        for (int i = 0; i < size; i++) {
+            long id = buffer.getLong(record(i) + ID);
+            if (kept.contains(id) && !changedIds.contains(id)) {
+                mediaFiles.add(getMediaFile(i));
+            }
+        }
+
+        // Without every row, changed rows older than the last one would leave a gap
+        long lastDate = size > 0 ? buffer.getLong(record(size - 1) + DATE) : Long.MAX_VALUE;
+        long lastId = size > 0 ? buffer.getLong(record(size - 1) + ID) : Long.MAX_VALUE;
+        for (MediaFile mediaFile : changed) {
+            if (complete || mediaFile.getDate() > lastDate
+                    || (mediaFile.getDate() == lastDate && mediaFile.getId() >= lastId)) {
+                mediaFiles.add(mediaFile);
+            }
+        }
+        Collections.sort(mediaFiles, NEWEST_FIRST);
+
+        if (mediaFiles.size() > MAX_ROWS) {
+            return new Rows(new ArrayList<>(mediaFiles.subList(0, MAX_ROWS)), false);
+        }
+        return new Rows(mediaFiles, complete);
+    }
+
+    /**
+     * @return {@code limit} files starting at {@code offset}, or null if they are not all
+     * in the index.
+     */
+    @Nullable
+    synchronized List<MediaFile> get(int offset, int limit) {
+        if (offset < 0) return null;
+        if (offset + limit > size && !complete) return null;
+
+        int end = Math.min(offset + limit, size);
+        List<MediaFile> mediaFiles = new ArrayList<>(Math.max(end - offset, 0));
+        for (int i = offset; i < end; i++) {
+            mediaFiles.add(getMediaFile(i));
+        }
+        return mediaFiles;
+    }
+
+    /**
+     * @return {@code limit} files after {@code key}, or null if they are not all in the index.
+     */
+    @Nullable
+    synchronized List<MediaFile> getAfter(MediaFileKeyedDataSource.Key key, boolean inclusive, int limit) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long date = buffer.getLong(record(mid) + DATE);
+            long id = buffer.getLong(record(mid) + ID);
+            boolean after = date < key.date
+                    || (date == key.date && (inclusive ? id <= key.id : id < key.id));
+            if (after) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return get(low, limit);
+    }
+
+    private int record(int position) {
+        return recordsStart + position * RECORD_SIZE;
+    }
+
+    private MediaFile getMediaFile(int position) {
+        int record = record(position);
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(buffer.getLong(record + ID));
+        mediaFile.setDate(buffer.getLong(record + DATE));
+        mediaFile.setSize(buffer.getLong(record + SIZE));
+        mediaFile.setDuration(buffer.getLong(record + DURATION));
+        mediaFile.setAlbumId(buffer.getLong(record + ALBUM_ID));
+        mediaFile.setHeight(buffer.getInt(record + HEIGHT));
+        mediaFile.setWidth(buffer.getInt(record + WIDTH));
+        mediaFile.setMediaType(buffer.getInt(record + MEDIA_TYPE));
+        mediaFile.setName(getString(buffer.getInt(record + NAME)));
+        mediaFile.setPath(getString(buffer.getInt(record + PATH)));
+        mediaFile.setMimeType(getString(buffer.getInt(record + MIME_TYPE)));
+        mediaFile.setBucketId(getString(buffer.getInt(record + BUCKET_ID)));
+        mediaFile.setBucketName(getString(buffer.getInt(record + BUCKET_NAME)));
+        mediaFile.setContentUri(contentUri);
+        return mediaFile;
+    }
+
+    @Nullable
+    private String getString(int index) {
+        if (index < 0) return null;
+        String string = strings[index];
+        if (string == null) {
+            int start = buffer.getInt(stringsStart + index * 4);
+            int end = buffer.getInt(stringsStart + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(stringBytesStart + start);
+            duplicate.get(bytes);
+            string = new String(bytes, UTF_8);
+            strings[index] = string;
+        }
+        return string;
+    }
+
+    private static final Comparator<MediaFile> NEWEST_FIRST = new Comparator<MediaFile>() {
+        @Override
+        public int compare(MediaFile f1, MediaFile f2) {
+            if (f1.getDate() != f2.getDate()) return f1.getDate() < f2.getDate() ? 1 : -1;
+            return f1.getId() < f2.getId() ? 1 : (f1.getId() > f2.getId() ? -1 : 0);
+        }
+    };
+
+    private static File getFile(Context context, String key) {
+        return new File(context.getCacheDir(), FILE_PREFIX + Integer.toHexString(key.hashCode()));
+    }
+
+    @Nullable
+    private static MediaFileIndex read(File file, String key, Uri contentUri) {
+        if (!file.exists()) return null;
+
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.getInt() != FORMAT_VERSION || !key.equals(readString(buffer))) {
+                return null;
+            }
+
+            String version = readString(buffer);
+            long generation = buffer.getLong();
+            boolean complete = buffer.get() != 0;
+            int size = buffer.getInt();
+            int stringCount = buffer.getInt();
+            if (buffer.remaining() < size * RECORD_SIZE + (stringCount + 1) * 4) return null;
+            return new MediaFileIndex(buffer, contentUri, version, generation, complete, size, stringCount);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static boolean write(File file, String key, @Nullable String version, long generation,
+                                 List<MediaFile> mediaFiles, boolean complete) {
+        HashMap<String, Integer> stringIndexes = new HashMap<>();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[16];
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(mediaFiles.size() * RECORD_SIZE);
+            DataOutputStream records = new DataOutputStream(recordBytes);
+            for (MediaFile mediaFile : mediaFiles) {
+                records.writeLong(mediaFile.getId());
+                records.writeLong(mediaFile.getDate());
+                records.writeLong(mediaFile.getSize());
+                records.writeLong(mediaFile.getDuration());
+                records.writeLong(mediaFile.getAlbumId());
+                records.writeInt((int) mediaFile.getHeight());
+                records.writeInt((int) mediaFile.getWidth());
+                records.writeInt(mediaFile.getMediaType());
+                String[] values = {mediaFile.getName(), mediaFile.getPath(), mediaFile.getMimeType(),
+                        mediaFile.getBucketId(), mediaFile.getBucketName()};
+                for (String value : values) {
+                    if (value == null) {
+                        records.writeInt(-1);
+                        continue;
+                    }
+                    Integer index = stringIndexes.get(value);
+                    if (index == null) {
+                        index = stringIndexes.size();
+                        stringIndexes.put(value, index);
+                        byte[] bytes = value.getBytes(UTF_8);
+                        stringBytes.write(bytes, 0, bytes.length);
+                        if (index + 1 == stringOffsets.length) {
+                            stringOffsets = Arrays.copyOf(stringOffsets, stringOffsets.length * 2);
+                        }
+                        stringOffsets[index + 1] = stringBytes.size();
+                    }
+                    records.writeInt(index);
+                }
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, key);
+            writeString(out, version);
+            out.writeLong(generation);
+            out.writeBoolean(complete);
+            out.writeInt(mediaFiles.size());
+            out.writeInt(stringIndexes.size());
+            recordBytes.writeTo(out);
+            for (int i = 0; i <= stringIndexes.size(); i++) {
+                out.writeInt(stringOffsets[i]);
+            }
+            stringBytes.writeTo(out);
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
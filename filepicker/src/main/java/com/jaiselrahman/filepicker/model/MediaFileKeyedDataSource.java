@@ -0,0 +1,257 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.provider.BaseColumns._ID;
+import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
+
+/**
+ * Pages through MediaStore by seeking on ({@link MediaFile#getDate()}, {@link MediaFile#getId()})
+ * instead of LIMIT/OFFSET, so every page costs the same regardless of how deep it is.
+ */
+public class MediaFileKeyedDataSource extends ItemKeyedDataSource<MediaFileKeyedDataSource.Key, MediaFile> {
+
+    private Configurations configs;
+    private ContentResolver contentResolver;
+    private Context context;
+
+    private MediaFileQuery query;
+    private MediaFileSnapshot snapshot;
+    private Long dirId;
+    @Nullable
+    private MediaRepository repository;
+    @Nullable
+    private MediaFileIndex index;
+
+    private final Runnable onIndexRefreshed = new Runnable() {
+        @Override
+        public void run() {
+            if (repository != null) repository.clear();
+            invalidate();
+        }
+    };
+
+    private MediaFileKeyedDataSource(ContentResolver contentResolver, @Nullable Context context,
+                                      @NonNull Configurations configs, Long dirId, MediaFileQuery query,
+                                      MediaFileSnapshot snapshot) {
+        this.contentResolver = contentResolver;
+        this.context = context;
+        this.configs = configs;
+        this.query = query;
+        this.snapshot = snapshot;
+        this.dirId = dirId;
+        this.repository = MediaRepository.get(configs);
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Key> params, @NonNull LoadInitialCallback<MediaFile> callback) {
+        Key key = params.requestedInitialKey;
+        if (dirId == null) {
+            index = MediaFileIndex.open(context, contentResolver, configs, true, onIndexRefreshed);
+        }
+
+        List<MediaFile> patched = snapshot.onLoadInitial(this, key == null);
+        if (patched != null) {
+            callback.onResult(patched);
+            return;
+        }
+
+        if (key == null) {
+            callback.onResult(loadAfter(null, false, params.requestedLoadSize));
+            return;
+        }
+
+        int before = params.requestedLoadSize / 2;
+        List<MediaFile> mediaFilesBefore = loadBefore(key, before);
+        List<MediaFile> mediaFilesAfter = loadAfter(key, true, params.requestedLoadSize - before);
+        if (mediaFilesBefore.isEmpty()) {
+            callback.onResult(mediaFilesAfter);
+            return;
+        }
+
+        List<MediaFile> mediaFiles = new ArrayList<>(mediaFilesBefore.size() + mediaFilesAfter.size());
+        mediaFiles.addAll(mediaFilesBefore);
+        mediaFiles.addAll(mediaFilesAfter);
+        callback.onResult(mediaFiles);
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Key> params, @NonNull LoadCallback<MediaFile> callback) {
+        callback.onResult(loadAfter(params.key, false, params.requestedLoadSize));
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Key> params, @NonNull LoadCallback<MediaFile> callback) {
+        callback.onResult(loadBefore(params.key, params.requestedLoadSize));
+    }
+
+    @NonNull
+    @Override
+    public Key getKey(@NonNull MediaFile item) {
+        return new Key(item.getDate(), item.getId());
+    }
+
+    private List<MediaFile> loadAfter(@Nullable Key key, boolean inclusive, int limit) {
+        List<MediaFile> mediaFiles = null;
+        if (repository != null) {
+            mediaFiles = key == null
+                    ? repository.get(dirId, 0, limit)
+                    : repository.getAfter(dirId, key, inclusive, limit);
+        }
+        if (mediaFiles == null && index != null) {
+            mediaFiles = key == null ? index.get(0, limit) : index.getAfter(key, inclusive, limit);
+        }
+        boolean skeletons = false;
+        if (mediaFiles == null) {
+            mediaFiles = getMediaFiles(key == null ? null : key.afterClause(inclusive), limit);
+            skeletons = MediaFileLoader.useSkeletons(configs);
+        }
+        // Other screens may not fill in skeletons
+        if (repository != null && !inclusive && !skeletons) {
+            repository.putAfter(dirId, key, mediaFiles, limit);
+        }
+        snapshot.onLoaded(this, mediaFiles, false, mediaFiles.size() < limit);
+        return mediaFiles;
+    }
+
+    private List<MediaFile> loadBefore(Key key, int limit) {
+        List<MediaFile> mediaFiles = getMediaFilesBefore(key, limit);
+        snapshot.onLoaded(this, mediaFiles, true, mediaFiles.size() < limit);
+        return mediaFiles;
+    }
+
+    private List<MediaFile> getMediaFiles(@Nullable String keyClause, int limit) {
+        if (keyClause == null) {
+            List<MediaFile> prewarmed = FirstPagePrewarm.take(configs, dirId, limit);
+            if (prewarmed != null) return prewarmed;
+        }
+
+        return queryMediaFiles(contentResolver, query, configs, keyClause, MediaFileQuery.SORT_DESC, limit, false);
+    }
+
+    private List<MediaFile> getMediaFilesBefore(Key key, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+
+        return queryMediaFiles(contentResolver, query, configs, key.beforeClause(), MediaFileQuery.SORT_ASC,
+                limit, true);
+    }
+
+    private static List<MediaFile> queryMediaFiles(final ContentResolver contentResolver, final MediaFileQuery query,
+                                                   final Configurations configs, @Nullable final String clause,
+                                                   final String sortOrder, final int limit, final boolean reverse) {
+        final boolean skeleton = MediaFileLoader.useSkeletons(configs);
+        final String[] projection = skeleton ? MediaFileLoader.getSkeletonProjection(configs) : query.projection;
+        String kind = MediaFileLoader.getQueryKind(reverse ? "filesReversed" : "files", configs);
+        String key = query.getKey(kind, projection, clause, sortOrder, limit, 0);
+        return QueryExecutor.execute(key, new QueryExecutor.Loader<List<MediaFile>>() {
+            @Override
+            public List<MediaFile> load() {
+                Cursor data = query.query(contentResolver, projection, clause, sortOrder, limit, 0);
+                return skeleton
+                        ? MediaFileLoader.asSkeletons(data, configs, reverse)
+                        : MediaFileLoader.asMediaFiles(data, configs, reverse);
+            }
+        });
+    }
+
+    public static class Key {
+        final long date;
+        final long id;
+
+        Key(long date, long id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        String afterClause(boolean inclusive) {
+            return DATE_ADDED + " < " + date + " or (" + DATE_ADDED + " = " + date
+                    + " and " + _ID + (inclusive ? " <= " : " < ") + id + ")";
+        }
+
+        String beforeClause() {
+            return DATE_ADDED + " > " + date + " or (" + DATE_ADDED + " = " + date
+                    + " and " + _ID + " > " + id + ")";
+        }
+    }
+
+    public static class Factory extends DataSource.Factory<Key, MediaFile> {
+        private ContentResolver contentResolver;
+        private Context context;
+        private Configurations configs;
+        private Long dirId;
+
+        private Uri uri;
+        private MediaFileSnapshot snapshot;
+        @Nullable
+        private volatile MediaFileQuery query;
+
+        Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs, Long dirId) {
+            this.contentResolver = contentResolver;
+            this.context = context;
+            this.configs = configs;
+            this.dirId = dirId;
+
+            uri = MediaFileLoader.getContentUri(configs);
+            snapshot = new MediaFileSnapshot(new MediaFileSnapshot.Loader() {
+                @Override
+                public List<MediaFile> load(String clause) {
+                    MediaFileQuery query = Factory.this.query;
+                    if (query == null) query = newQuery();
+                    return queryMediaFiles(contentResolver, query, configs, clause, MediaFileQuery.SORT_DESC, 0, false);
+                }
+            });
+        }
+
+        public Uri getUri() {
+            return uri;
+        }
+
+        MediaFileSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        @NonNull
+        @Override
+        public MediaFileKeyedDataSource create() {
+            MediaFileQuery query = newQuery();
+            this.query = query;
+            return new MediaFileKeyedDataSource(contentResolver, context, configs, dirId, query, snapshot);
+        }
+
+        /**
+         * A new query picks up the folders ignored since the last one.
+         */
+        private MediaFileQuery newQuery() {
+            return new MediaFileQuery(contentResolver, context, uri, configs, dirId);
+        }
+    }
+}
@@ -17,35 +17,25 @@
 package com.jaiselrahman.filepicker.model;
 
 import android.content.ContentResolver;
-import android.content.ContentUris;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
 import android.text.TextUtils;
+import android.util.Log;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.QueryUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static android.provider.BaseColumns._ID;
-import static android.provider.MediaStore.Audio.AlbumColumns.ALBUM_ID;
-import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
-import static android.provider.MediaStore.Files.FileColumns.MIME_TYPE;
-import static android.provider.MediaStore.MediaColumns.BUCKET_DISPLAY_NAME;
-import static android.provider.MediaStore.MediaColumns.BUCKET_ID;
-import static android.provider.MediaStore.MediaColumns.DATA;
-import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
-import static android.provider.MediaStore.MediaColumns.DISPLAY_NAME;
-import static android.provider.MediaStore.MediaColumns.DURATION;
-import static android.provider.MediaStore.MediaColumns.HEIGHT;
-import static android.provider.MediaStore.MediaColumns.SIZE;
-import static android.provider.MediaStore.MediaColumns.WIDTH;
+import static com.jaiselrahman.filepicker.activity.FilePickerActivity.TAG;
 
 public class MediaFileLoader {
     static final List<String> FILE_PROJECTION = Arrays.asList(
@@ -62,13 +52,99 @@ public class MediaFileLoader {
             MediaStore.Video.Media.DURATION
     );
 
-    @Nullable
-    public static MediaFile asMediaFile(ContentResolver contentResolver, Uri uri, Configurations configs) {
-        Cursor data = contentResolver.query(uri, FILE_PROJECTION.toArray(new String[0]), null, null, null);
-        if (data != null && data.moveToFirst()) {
-            return asMediaFile(data, configs, uri);
+    /**
+     * @return {@link #FILE_PROJECTION} without the columns that can't be set for the
+     * enabled media types, plus the media type and album id when they can be queried.
+     */
+    static List<String> getFileProjection(Configurations configs) {
+        // Suffixes can match any kind of file, so keep every column for them
+        String[] suffixes = configs.getSuffixes();
+        boolean anyFile = configs.isShowFiles() && suffixes != null && suffixes.length > 0;
+        boolean dimensions = anyFile || configs.isShowImages() || configs.isShowVideos();
+        boolean duration = anyFile || configs.isShowVideos() || configs.isShowAudios();
+
+        List<String> projection = new ArrayList<>(FILE_PROJECTION.size() + 2);
+        for (String column : FILE_PROJECTION) {
+            if (!dimensions && (column.equals(MediaStore.Files.FileColumns.HEIGHT)
+                    || column.equals(MediaStore.Files.FileColumns.WIDTH))) continue;
+            if (!duration && column.equals(MediaStore.Video.Media.DURATION)) continue;
+            projection.add(column);
+        }
+
+        if (MediaFileQuery.canUseMediaType(configs)) {
+            projection.add(MediaStore.Files.FileColumns.MEDIA_TYPE);
+        }
+
+        if (MediaFileQuery.canUseAlbumId(configs)) {
+            projection.add(MediaStore.Audio.AudioColumns.ALBUM_ID);
         }
-        return null;
+        return projection;
+    }
+
+    /**
+     * @return the columns a skeleton row needs: enough to lay it out and load its thumbnail.
+     */
+    static String[] getSkeletonProjection(Configurations configs) {
+        List<String> projection = new ArrayList<>(5);
+        projection.add(MediaStore.Files.FileColumns._ID);
+        projection.add(MediaStore.Files.FileColumns.DATE_ADDED);
+        projection.add(MediaStore.Images.Media.BUCKET_ID);
+        projection.add(MediaFileQuery.canUseMediaType(configs)
+                ? MediaStore.Files.FileColumns.MEDIA_TYPE
+                : MediaStore.Files.FileColumns.MIME_TYPE);
+        if (MediaFileQuery.canUseAlbumId(configs)) {
+            projection.add(MediaStore.Audio.AudioColumns.ALBUM_ID);
+        }
+        return projection.toArray(new String[0]);
+    }
+
+    /**
+     * @return whether pages are loaded with {@link #getSkeletonProjection}. Rows of columnar
+     * pages are created on every read, so they can't be filled in later.
+     */
+    static boolean useSkeletons(Configurations configs) {
+        return configs.isSkeletonPages() && !configs.isColumnarPages();
+    }
+
+    /**
+     * @return {@code kind} for {@link QueryExecutor#key}, told apart for columnar pages as their
+     * rows are decoded into a different list.
+     */
+    static String getQueryKind(String kind, Configurations configs) {
+        return configs.isColumnarPages() ? kind + "Columnar" : kind;
+    }
+
+    /**
+     * @return rows of a cursor over {@link #getSkeletonProjection}, marked as skeletons.
+     */
+    static List<MediaFile> asSkeletons(@Nullable Cursor data, Configurations configs, boolean reverse) {
+        List<MediaFile> mediaFiles = asMediaFiles(data, configs, reverse);
+        for (MediaFile mediaFile : mediaFiles) {
+            mediaFile.setSkeleton(true);
+        }
+        return mediaFiles;
+    }
+
+    @Nullable
+    public static MediaFile asMediaFile(final ContentResolver contentResolver, final Uri uri,
+                                        final Configurations configs) {
+        final String[] projection = FILE_PROJECTION.toArray(new String[0]);
+        String key = QueryExecutor.key("file", uri, projection, null, null, null, 0, 0);
+        return QueryExecutor.execute(key, new QueryExecutor.Loader<MediaFile>() {
+            @Override
+            public MediaFile load() {
+                Cursor data = contentResolver.query(uri, projection, null, null, null);
+                if (data == null) return null;
+                try {
+                    if (data.moveToFirst()) {
+                        return new MediaFileRowMapper(data, configs).map(data, uri);
+                    }
+                } finally {
+                    data.close();
+                }
+                return null;
+            }
+        });
     }
 
     static Uri getContentUri(Configurations configs) {
@@ -80,77 +156,65 @@ public class MediaFileLoader {
         }
     }
 
-    static List<MediaFile> asMediaFiles(Cursor data, Configurations configs) {
-        ArrayList<MediaFile> mediaFiles = new ArrayList<>(data.getCount());
-        if (data.moveToFirst())
-            do {
-                MediaFile mediaFile = asMediaFile(data, configs, null);
-                if (mediaFile != null) {
-                    mediaFiles.add(mediaFile);
-                }
-            } while (data.moveToNext());
-        return mediaFiles;
-    }
-
-    private static MediaFile asMediaFile(@NonNull Cursor data, Configurations configs, @Nullable Uri uri) {
-        MediaFile mediaFile = new MediaFile();
-        mediaFile.setPath(data.getString(data.getColumnIndex(DATA)));
-
-        long size = data.getLong(data.getColumnIndex(SIZE));
-        //noinspection deprecation
-        if (size == 0 && mediaFile.getPath() != null) {
-            //Check if File size is really zero
-            size = new java.io.File(data.getString(data.getColumnIndex(DATA))).length();
-            if (size <= 0 && configs.isSkipZeroSizeFiles())
-                return null;
-        }
-        mediaFile.setSize(size);
-
-        mediaFile.setId(data.getLong(data.getColumnIndex(_ID)));
-        mediaFile.setName(data.getString(data.getColumnIndex(DISPLAY_NAME)));
-        mediaFile.setPath(data.getString(data.getColumnIndex(DATA)));
-        mediaFile.setDate(data.getLong(data.getColumnIndex(DATE_ADDED)));
-        mediaFile.setMimeType(data.getString(data.getColumnIndex(MIME_TYPE)));
-        mediaFile.setBucketId(data.getString(data.getColumnIndex(BUCKET_ID)));
-        mediaFile.setBucketName(data.getString(data.getColumnIndex(BUCKET_DISPLAY_NAME)));
-        mediaFile.setUri(uri != null ? uri : ContentUris.withAppendedId(getContentUri(configs), mediaFile.getId()));
-        mediaFile.setDuration(data.getLong(data.getColumnIndex(DURATION)));
-
-        if (TextUtils.isEmpty(mediaFile.getName())) {
-            //noinspection deprecation
-            String path = mediaFile.getPath() != null ? mediaFile.getPath() : "";
-            mediaFile.setName(path.substring(path.lastIndexOf('/') + 1));
+    /**
+     * Starts loading the first page of files for {@code configs} in the background, for a
+     * picker that is about to start. Needs the storage permission to be granted already.
+     */
+    public static void prewarm(Context context, Configurations configs) {
+        // Files only are picked from the document UI on Q+, and merged collections load their own uris
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && configs.isShowFiles()
+                && !(configs.isShowImages() || configs.isShowVideos() || configs.isShowAudios())) {
+            return;
         }
+        if (MediaCollection.canMerge(configs)) return;
 
-        int mediaTypeIndex = data.getColumnIndex(MEDIA_TYPE);
-        if (mediaTypeIndex >= 0) {
-            mediaFile.setMediaType(data.getInt(mediaTypeIndex));
-        }
+        FirstPagePrewarm.start(context, configs);
+    }
 
-        if ((mediaFile.getMediaType() == MediaFile.TYPE_FILE
-                || mediaFile.getMediaType() > MediaFile.TYPE_MAX)
-                && mediaFile.getMimeType() != null) {
-            //Double check correct MediaType
-            mediaFile.setMediaType(getMediaType(mediaFile.getMimeType()));
-        }
+    /**
+     * @return MediaStore id of a row uri, or -1 if the uri is not for a single row.
+     */
+    static long getId(@Nullable Uri uri) {
+        if (uri == null) return -1;
+        String id = uri.getLastPathSegment();
+        if (TextUtils.isEmpty(id) || !TextUtils.isDigitsOnly(id)) return -1;
+        return Long.parseLong(id);
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            mediaFile.setHeight(data.getLong(data.getColumnIndex(HEIGHT)));
-            mediaFile.setWidth(data.getLong(data.getColumnIndex(WIDTH)));
-        }
+    static List<MediaFile> asMediaFiles(@Nullable Cursor data, Configurations configs) {
+        return asMediaFiles(data, configs, false);
+    }
+
+    /**
+     * @param reverse whether to return the rows in the reverse order of the cursor.
+     */
+    static List<MediaFile> asMediaFiles(@Nullable Cursor data, Configurations configs, boolean reverse) {
+        return asMediaFiles(data, configs, getContentUri(configs), reverse);
+    }
 
-        int albumIdIndex = data.getColumnIndex(ALBUM_ID);
-        if (albumIdIndex >= 0) {
-            int albumId = data.getInt(albumIdIndex);
-            if (albumId >= 0) {
-                mediaFile.setThumbnail(ContentUris
-                        .withAppendedId(Uri.parse("content://media/external/audio/albumart"), albumId));
+    /**
+     * @param contentUri collection the rows belong to, their uris are built from it.
+     * @param reverse    whether to return the rows in the reverse order of the cursor.
+     */
+    static List<MediaFile> asMediaFiles(@Nullable Cursor data, Configurations configs, Uri contentUri,
+                                        boolean reverse) {
+        if (data == null) return new ArrayList<>();
+        try {
+            MediaFileRowMapper rowMapper = new MediaFileRowMapper(data, configs, contentUri);
+            List<MediaFile> mediaFiles = rowMapper.mapAll(data, reverse);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "asMediaFiles: decoded " + mediaFiles.size() + " rows in "
+                        + TimeUnit.NANOSECONDS.toMicros(rowMapper.getDecodeTimeNanos()) + "us, "
+                        + data.getColumnCount() + " columns, ~"
+                        + QueryUtils.estimateWindowBytes(data) + " window bytes");
             }
+            return mediaFiles;
+        } finally {
+            data.close();
         }
-        return mediaFile;
     }
 
-    private static @MediaFile.Type
+    static @MediaFile.Type
     int getMediaType(String mime) {
         if (mime.startsWith("image/")) {
             return MediaFile.TYPE_IMAGE;
@@ -0,0 +1,266 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.model.MediaFileKeyedDataSource.Key;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pages through {@code Images.Media}, {@code Video.Media} and {@code Audio.Media} at once,
+ * querying the collections concurrently and merging their rows by ({@link MediaFile#getDate()},
+ * {@link MediaFile#getId()}), the same order {@link MediaFileKeyedDataSource} uses.
+ * <p>
+ * Each collection is asked for a full page after the key, so a page never misses a row,
+ * and the rows that didn't make it into the page are loaded again with the next one.
+ */
+public class MediaFileMergedDataSource extends ItemKeyedDataSource<Key, MediaFile> {
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private Configurations configs;
+    private ContentResolver contentResolver;
+
+    private List<MediaFileQuery> queries;
+    private MediaFileSnapshot snapshot;
+
+    private MediaFileMergedDataSource(ContentResolver contentResolver, @NonNull Configurations configs,
+                                      List<MediaFileQuery> queries, MediaFileSnapshot snapshot) {
+        this.contentResolver = contentResolver;
+        this.configs = configs;
+        this.queries = queries;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Key> params, @NonNull LoadInitialCallback<MediaFile> callback) {
+        Key key = params.requestedInitialKey;
+        List<MediaFile> patched = snapshot.onLoadInitial(this, key == null);
+        if (patched != null) {
+            callback.onResult(patched);
+            return;
+        }
+
+        if (key == null) {
+            callback.onResult(loadAfter(null, params.requestedLoadSize));
+            return;
+        }
+
+        int before = params.requestedLoadSize / 2;
+        List<MediaFile> mediaFiles = loadBefore(key, before);
+        mediaFiles.addAll(loadAfter(key.afterClause(true), params.requestedLoadSize - before));
+        callback.onResult(mediaFiles);
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Key> params, @NonNull LoadCallback<MediaFile> callback) {
+        callback.onResult(loadAfter(params.key.afterClause(false), params.requestedLoadSize));
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Key> params, @NonNull LoadCallback<MediaFile> callback) {
+        callback.onResult(loadBefore(params.key, params.requestedLoadSize));
+    }
+
+    @NonNull
+    @Override
+    public Key getKey(@NonNull MediaFile item) {
+        return new Key(item.getDate(), item.getId());
+    }
+
+    private List<MediaFile> loadAfter(@Nullable String keyClause, int limit) {
+        List<MediaFile> mediaFiles = getMediaFiles(keyClause, limit);
+        snapshot.onLoaded(this, mediaFiles, false, mediaFiles.size() < limit);
+        return mediaFiles;
+    }
+
+    private List<MediaFile> loadBefore(Key key, int limit) {
+        List<MediaFile> mediaFiles = getMediaFilesBefore(key, limit);
+        snapshot.onLoaded(this, mediaFiles, true, mediaFiles.size() < limit);
+        return mediaFiles;
+    }
+
+    /**
+     * @return every row matching {@code clause}, in no particular order.
+     */
+    private static List<MediaFile> getAllMediaFiles(ContentResolver contentResolver, Configurations configs,
+                                                    List<MediaFileQuery> queries, String clause) {
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        List<List<MediaFile>> results = queryAll(contentResolver, configs, queries, clause, MediaFileQuery.SORT_DESC, 0);
+        for (List<MediaFile> result : results) {
+            mediaFiles.addAll(result);
+        }
+        return mediaFiles;
+    }
+
+    private List<MediaFile> getMediaFiles(@Nullable String keyClause, int limit) {
+        return merge(queryAll(contentResolver, configs, queries, keyClause, MediaFileQuery.SORT_DESC, limit),
+                limit, true);
+    }
+
+    private List<MediaFile> getMediaFilesBefore(Key key, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+
+        List<MediaFile> mediaFiles = merge(queryAll(contentResolver, configs, queries, key.beforeClause(),
+                MediaFileQuery.SORT_ASC, limit), limit, false);
+        Collections.reverse(mediaFiles);
+        return mediaFiles;
+    }
+
+    /**
+     * Runs every query concurrently, the first one on the calling thread. Fails if any of them
+     * fails, a page merged without a collection would skip its rows for good.
+     */
+    private static List<List<MediaFile>> queryAll(final ContentResolver contentResolver, final Configurations configs,
+                                                  List<MediaFileQuery> queries, @Nullable final String keyClause,
+                                                  final String sortOrder, final int limit) {
+        List<Future<List<MediaFile>>> futures = new ArrayList<>(queries.size());
+        for (int i = 1; i < queries.size(); i++) {
+            final MediaFileQuery query = queries.get(i);
+            futures.add(executor.submit(new Callable<List<MediaFile>>() {
+                @Override
+                public List<MediaFile> call() {
+                    return query(contentResolver, configs, query, keyClause, sortOrder, limit);
+                }
+            }));
+        }
+
+        List<List<MediaFile>> results = new ArrayList<>(queries.size());
+        results.add(query(contentResolver, configs, queries.get(0), keyClause, sortOrder, limit));
+        for (Future<List<MediaFile>> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        return results;
+    }
+
+    private static List<MediaFile> query(ContentResolver contentResolver, Configurations configs, MediaFileQuery query,
+                                         @Nullable String keyClause, String sortOrder, int limit) {
+        Cursor data = query.query(contentResolver, keyClause, sortOrder, limit, 0);
+        return MediaFileLoader.asMediaFiles(data, configs, query.uri, false);
+    }
+
+    /**
+     * K-way merge of lists each sorted by (date, id), keeping the first {@code limit} rows.
+     */
+    private static List<MediaFile> merge(List<List<MediaFile>> lists, int limit, boolean descending) {
+        int[] heads = new int[lists.size()];
+        List<MediaFile> merged = new ArrayList<>(limit);
+        while (merged.size() < limit) {
+            int next = -1;
+            MediaFile nextFile = null;
+            for (int i = 0; i < heads.length; i++) {
+                List<MediaFile> list = lists.get(i);
+                if (heads[i] >= list.size()) continue;
+                MediaFile mediaFile = list.get(heads[i]);
+                if (nextFile == null || comesBefore(mediaFile, nextFile, descending)) {
+                    next = i;
+                    nextFile = mediaFile;
+                }
+            }
+            if (nextFile == null) break;
+            merged.add(nextFile);
+            heads[next]++;
+        }
+        return merged;
+    }
+
+    private static boolean comesBefore(MediaFile a, MediaFile b, boolean descending) {
+        int order;
+        if (a.getDate() != b.getDate()) {
+            order = a.getDate() < b.getDate() ? -1 : 1;
+        } else {
+            order = a.getId() < b.getId() ? -1 : (a.getId() > b.getId() ? 1 : 0);
+        }
+        return descending ? order > 0 : order < 0;
+    }
+
+    public static class Factory extends DataSource.Factory<Key, MediaFile> {
+        private ContentResolver contentResolver;
+        private Context context;
+        private Configurations configs;
+        private Long dirId;
+        private MediaFileSnapshot snapshot;
+        @Nullable
+        private volatile List<MediaFileQuery> queries;
+
+        Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs, Long dirId) {
+            this.contentResolver = contentResolver;
+            this.context = context;
+            this.configs = configs;
+            this.dirId = dirId;
+
+            snapshot = new MediaFileSnapshot(new MediaFileSnapshot.Loader() {
+                @Override
+                public List<MediaFile> load(String clause) {
+                    List<MediaFileQuery> queries = Factory.this.queries;
+                    if (queries == null) queries = newQueries();
+                    return getAllMediaFiles(contentResolver, configs, queries, clause);
+                }
+            });
+        }
+
+        MediaFileSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        @NonNull
+        @Override
+        public MediaFileMergedDataSource create() {
+            List<MediaFileQuery> queries = newQueries();
+            this.queries = queries;
+            return new MediaFileMergedDataSource(contentResolver, configs, queries, snapshot);
+        }
+
+        /**
+         * New queries pick up the folders ignored since the last ones.
+         */
+        private List<MediaFileQuery> newQueries() {
+            List<MediaCollection> collections = MediaCollection.of(configs);
+            List<MediaFileQuery> queries = new ArrayList<>(collections.size());
+            for (MediaCollection collection : collections) {
+                queries.add(new MediaFileQuery(contentResolver, context, configs, dirId, collection));
+            }
+            return queries;
+        }
+    }
+}
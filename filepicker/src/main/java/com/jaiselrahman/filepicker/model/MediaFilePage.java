@@ -0,0 +1,204 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * Read-only page of {@link MediaFile}s stored column by column. Numbers are kept in primitive
+ * arrays and repeated strings (mime type and bucket) in a pool per page, so a loaded page
+ * holds a few arrays instead of a MediaFile and its strings per row.
+ * <p>
+ * A new {@link MediaFile} is created on every {@link #get(int)}, they compare equal by id.
+ */
+class MediaFilePage extends AbstractList<MediaFile> implements RandomAccess {
+    private final Uri contentUri;
+    private final int size;
+
+    private final long[] ids;
+    private final long[] sizes;
+    private final long[] dates;
+    private final long[] durations;
+    private final long[] heights;
+    private final long[] widths;
+    private final int[] mediaTypes;
+    private final int[] albumIds;
+    private final String[] names;
+    private final String[] paths;
+    private final int[] mimeTypes;
+    private final int[] bucketIds;
+    private final int[] bucketNames;
+    private final String[] pool;
+
+    private MediaFilePage(Builder builder) {
+        contentUri = builder.contentUri;
+        size = builder.size;
+        ids = Arrays.copyOf(builder.ids, size);
+        sizes = Arrays.copyOf(builder.sizes, size);
+        dates = Arrays.copyOf(builder.dates, size);
+        durations = Arrays.copyOf(builder.durations, size);
+        heights = Arrays.copyOf(builder.heights, size);
+        widths = Arrays.copyOf(builder.widths, size);
+        mediaTypes = Arrays.copyOf(builder.mediaTypes, size);
+        albumIds = Arrays.copyOf(builder.albumIds, size);
+        names = Arrays.copyOf(builder.names, size);
+        paths = Arrays.copyOf(builder.paths, size);
+        mimeTypes = Arrays.copyOf(builder.mimeTypes, size);
+        bucketIds = Arrays.copyOf(builder.bucketIds, size);
+        bucketNames = Arrays.copyOf(builder.bucketNames, size);
+        pool = builder.pool.toArray(new String[0]);
+    }
+
+    @Override
+    public MediaFile get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(ids[index]);
+        mediaFile.setSize(sizes[index]);
+        mediaFile.setDate(dates[index]);
+        mediaFile.setDuration(durations[index]);
+        mediaFile.setHeight(heights[index]);
+        mediaFile.setWidth(widths[index]);
+        mediaFile.setMediaType(mediaTypes[index]);
+        mediaFile.setName(names[index]);
+        mediaFile.setPath(paths[index]);
+        mediaFile.setMimeType(fromPool(mimeTypes[index]));
+        mediaFile.setBucketId(fromPool(bucketIds[index]));
+        mediaFile.setBucketName(fromPool(bucketNames[index]));
+        mediaFile.setContentUri(contentUri);
+        mediaFile.setAlbumId(albumIds[index]);
+        return mediaFile;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Nullable
+    private String fromPool(int index) {
+        return index >= 0 ? pool[index] : null;
+    }
+
+    static class Builder {
+        private final Uri contentUri;
+        private int size;
+
+        private long[] ids;
+        private long[] sizes;
+        private long[] dates;
+        private long[] durations;
+        private long[] heights;
+        private long[] widths;
+        private int[] mediaTypes;
+        private int[] albumIds;
+        private String[] names;
+        private String[] paths;
+        private int[] mimeTypes;
+        private int[] bucketIds;
+        private int[] bucketNames;
+
+        private final ArrayList<String> pool = new ArrayList<>();
+        private final HashMap<String, Integer> poolIndexes = new HashMap<>();
+
+        Builder(Uri contentUri, int capacity) {
+            this.contentUri = contentUri;
+            allocate(Math.max(capacity, 1));
+        }
+
+        Builder add(long id, long size, long date, long duration, long height, long width,
+                    int mediaType, int albumId, String name, String path,
+                    @Nullable String mimeType, @Nullable String bucketId, @Nullable String bucketName) {
+            if (this.size == ids.length) {
+                allocate(ids.length * 2);
+            }
+            int i = this.size++;
+            ids[i] = id;
+            sizes[i] = size;
+            dates[i] = date;
+            durations[i] = duration;
+            heights[i] = height;
+            widths[i] = width;
+            mediaTypes[i] = mediaType;
+            albumIds[i] = albumId;
+            names[i] = name;
+            paths[i] = path;
+            mimeTypes[i] = toPool(mimeType);
+            bucketIds[i] = toPool(bucketId);
+            bucketNames[i] = toPool(bucketName);
+            return this;
+        }
+
+        MediaFilePage build() {
+            return new MediaFilePage(this);
+        }
+
+        private int toPool(@Nullable String value) {
+            if (value == null) return -1;
+            Integer index = poolIndexes.get(value);
+            if (index == null) {
+                index = pool.size();
+                pool.add(value);
+                poolIndexes.put(value, index);
+            }
+            return index;
+        }
+
+        private void allocate(int capacity) {
+            if (ids == null) {
+                ids = new long[capacity];
+                sizes = new long[capacity];
+                dates = new long[capacity];
+                durations = new long[capacity];
+                heights = new long[capacity];
+                widths = new long[capacity];
+                mediaTypes = new int[capacity];
+                albumIds = new int[capacity];
+                names = new String[capacity];
+                paths = new String[capacity];
+                mimeTypes = new int[capacity];
+                bucketIds = new int[capacity];
+                bucketNames = new int[capacity];
+                return;
+            }
+            ids = Arrays.copyOf(ids, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            mediaTypes = Arrays.copyOf(mediaTypes, capacity);
+            albumIds = Arrays.copyOf(albumIds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            paths = Arrays.copyOf(paths, capacity);
+            mimeTypes = Arrays.copyOf(mimeTypes, capacity);
+            bucketIds = Arrays.copyOf(bucketIds, capacity);
+            bucketNames = Arrays.copyOf(bucketNames, capacity);
+        }
+    }
+}
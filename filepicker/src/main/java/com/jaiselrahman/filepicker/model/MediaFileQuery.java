@@ -0,0 +1,299 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.config.IgnorePathMatcher;
+import com.jaiselrahman.filepicker.utils.QueryUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static android.provider.BaseColumns._ID;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_AUDIO;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_NONE;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+import static android.provider.MediaStore.MediaColumns.BUCKET_ID;
+import static android.provider.MediaStore.MediaColumns.DATA;
+import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
+import static android.provider.MediaStore.MediaColumns.DISPLAY_NAME;
+import static android.provider.MediaStore.MediaColumns.SIZE;
+
+class MediaFileQuery {
+    static final String SORT_DESC = DATE_ADDED + " DESC, " + _ID + " DESC";
+    static final String SORT_ASC = DATE_ADDED + " ASC, " + _ID + " ASC";
+
+    final Uri uri;
+    final String[] projection;
+    final String selection;
+    final String[] selectionArgs;
+
+    MediaFileQuery(ContentResolver contentResolver, @Nullable Context context, Uri uri,
+                   @NonNull Configurations configs, Long dirId) {
+        this(contentResolver, context, uri, configs, dirId, null);
+    }
+
+    /**
+     * Query over a single collection with its own projection, the collection already
+     * narrows the media type.
+     */
+    MediaFileQuery(ContentResolver contentResolver, @Nullable Context context,
+                   @NonNull Configurations configs, Long dirId, MediaCollection collection) {
+        this(contentResolver, context, collection.uri, configs, dirId, collection);
+    }
+
+    private MediaFileQuery(ContentResolver contentResolver, @Nullable Context context, Uri uri,
+                           @NonNull Configurations configs, Long dirId, @Nullable MediaCollection collection) {
+        this.uri = uri;
+
+        StringBuilder selectionBuilder = new StringBuilder(100);
+
+        ArrayList<String> selectionArgs = new ArrayList<>();
+
+        String rootPath = configs.getRootPath();
+        if (rootPath != null) {
+            selectionBuilder.append(DATA).append(" LIKE ?");
+            if (!rootPath.endsWith(File.separator)) rootPath += File.separator;
+            selectionArgs.add(rootPath + "%");
+        }
+
+        if (dirId != null) {
+            appendAnd(selectionBuilder).append(BUCKET_ID).append("=").append(dirId);
+        }
+
+        if (collection == null && canUseMediaType(configs)) {
+
+            appendAnd(selectionBuilder).append("(");
+
+            if (configs.isShowImages()) {
+                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
+                    selectionBuilder.append(" or ");
+                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_IMAGE);
+            }
+
+            if (configs.isShowVideos()) {
+                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
+                    selectionBuilder.append(" or ");
+                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_VIDEO);
+            }
+
+            if (configs.isShowAudios()) {
+                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
+                    selectionBuilder.append(" or ");
+                selectionBuilder.append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_AUDIO);
+            }
+
+            if (configs.isShowFiles()) {
+                if (selectionBuilder.charAt(selectionBuilder.length() - 1) != '(')
+                    selectionBuilder.append(" or ");
+
+                String[] suffixes = configs.getSuffixes();
+                if (suffixes != null && suffixes.length > 0) {
+                    appendFileSelection(selectionBuilder, selectionArgs, suffixes);
+                } else {
+                    appendDefaultFileSelection(selectionBuilder);
+                }
+            }
+            selectionBuilder.append(")");
+        }
+
+        if (configs.isSkipZeroSizeFiles()) {
+            appendAnd(selectionBuilder).append(SIZE).append(" > 0");
+        }
+
+
+        String ignorePathSelection = getIgnorePathSelection(configs, selectionArgs);
+        if (ignorePathSelection != null) {
+            appendAnd(selectionBuilder).append(ignorePathSelection);
+        }
+
+        List<String> folders = IgnoredFoldersCache.get(contentResolver, context, configs);
+        if (folders.size() > 0) {
+            appendAnd(selectionBuilder).append("(").append(DATA).append(" NOT LIKE ? ");
+            selectionArgs.add(folders.get(0) + File.separator + "%");
+            int size = folders.size();
+            for (int i = 1; i < size; i++) {
+                selectionBuilder.append(" and ").append(DATA).append(" NOT LIKE ? ");
+                selectionArgs.add(folders.get(i) + File.separator + "%");
+            }
+            selectionBuilder.append(")");
+        }
+
+        this.projection = collection != null
+                ? collection.projection
+                : MediaFileLoader.getFileProjection(configs).toArray(new String[0]);
+        this.selection = selectionBuilder.toString();
+        this.selectionArgs = selectionArgs.toArray(new String[0]);
+    }
+
+    /**
+     * Runs this query narrowed by {@code clause}, which is and-ed with the base selection.
+     */
+    @Nullable
+    Cursor query(ContentResolver contentResolver, @Nullable String clause,
+                 String sortOrder, int limit, int offset) {
+        return query(contentResolver, projection, clause, sortOrder, limit, offset);
+    }
+
+    /**
+     * Runs this query for {@code projection} instead of its own.
+     */
+    @Nullable
+    Cursor query(ContentResolver contentResolver, String[] projection, @Nullable String clause,
+                 String sortOrder, int limit, int offset) {
+        long start = System.nanoTime();
+        Cursor data = QueryUtils.query(contentResolver, uri, projection,
+                getSelection(clause), selectionArgs, sortOrder, limit, offset);
+        // The count fills the first window, so the time includes reading the rows. Short
+        // pages, like the last one, would make rows look slower than they are
+        if (data != null && limit > 0 && data.getCount() == limit) {
+            PagingPolicy.onRowsLoaded(limit, System.nanoTime() - start);
+        }
+        return data;
+    }
+
+    /**
+     * @return key of this query for {@link QueryExecutor}, with the same arguments as
+     * {@link #query(ContentResolver, String[], String, String, int, int)}.
+     */
+    String getKey(String kind, String[] projection, @Nullable String clause,
+                  String sortOrder, int limit, int offset) {
+        return QueryExecutor.key(kind, uri, projection, getSelection(clause), selectionArgs,
+                sortOrder, limit, offset);
+    }
+
+    private String getSelection(@Nullable String clause) {
+        if (clause == null) return selection;
+        return selection.isEmpty() ? clause : "(" + selection + ") and (" + clause + ")";
+    }
+
+    /**
+     * @return ids of the rows matching the base selection and {@code clause}, or null if the
+     * query failed.
+     */
+    @Nullable
+    Set<Long> queryIds(ContentResolver contentResolver, String clause) {
+        Cursor data = query(contentResolver, new String[]{_ID}, clause, null, 0, 0);
+        if (data == null) return null;
+        try {
+            Set<Long> ids = new HashSet<>(data.getCount());
+            while (data.moveToNext()) {
+                ids.add(data.getLong(0));
+            }
+            return ids;
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * @return rows matching the base selection, or -1 if they couldn't be counted.
+     */
+    int count(final ContentResolver contentResolver) {
+        return QueryExecutor.execute(
+                QueryExecutor.key("count", uri, null, selection, selectionArgs, null, 0, 0),
+                new QueryExecutor.Loader<Integer>() {
+                    @Override
+                    public Integer load() {
+                        return QueryUtils.count(contentResolver, uri, selection, selectionArgs);
+                    }
+                });
+    }
+
+    static boolean canUseAlbumId(Configurations configs) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q ||
+                (configs.isShowAudios() && !(configs.isShowFiles() || configs.isShowImages() || configs.isShowVideos()));
+    }
+
+    static boolean canUseMediaType(Configurations configs) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q ||
+                (!configs.isShowAudios() && (configs.isShowFiles() || configs.isShowImages() || configs.isShowVideos()));
+    }
+
+    static void appendDefaultFileSelection(StringBuilder selection) {
+        selection.append("(")
+                .append("(")
+                .append(MEDIA_TYPE).append(" = ").append(MEDIA_TYPE_NONE)
+                .append(" or ")
+                .append(MEDIA_TYPE).append(" > ").append(MEDIA_TYPE_VIDEO)
+                .append(")and ")
+                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" <> 'resource/folder'")
+                .append(" and ")
+                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'image/%'")
+                .append(" and ")
+                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'video/%'")
+                .append(" and ")
+                .append(MediaStore.Files.FileColumns.MIME_TYPE).append(" NOT LIKE 'audio/%'")
+                .append(")");
+    }
+
+    static void appendFileSelection(StringBuilder selectionBuilder, List<String> selectionArgs, String[] suffixes) {
+        selectionBuilder.append("(").append(DISPLAY_NAME).append(" LIKE ?");
+        selectionArgs.add("%." + FilterKey.normalizeSuffix(suffixes[0]));
+
+        int size = suffixes.length;
+        for (int i = 1; i < size; i++) {
+            selectionBuilder.append(" or ").append(DISPLAY_NAME).append(" LIKE ?");
+            selectionArgs.add("%." + FilterKey.normalizeSuffix(suffixes[i]));
+        }
+
+        selectionBuilder.append(")");
+    }
+
+    /**
+     * @return selection excluding rows matched by the ignore paths that can be written as GLOB
+     * patterns, or null if there are none. All ignore paths are still checked by
+     * {@link com.jaiselrahman.filepicker.utils.FileUtils#toIgnoreFolder}.
+     */
+    @Nullable
+    static String getIgnorePathSelection(Configurations configs, List<String> selectionArgs) {
+        IgnorePathMatcher matcher = configs.getIgnorePathMatcher();
+        if (matcher == null) return null;
+
+        String[] globs = matcher.getGlobs();
+        if (globs.length == 0) return null;
+
+        StringBuilder selection = new StringBuilder("(");
+        for (int i = 0; i < globs.length; i++) {
+            if (i > 0) selection.append(" and ");
+            selection.append(DATA).append(" NOT GLOB ?");
+            selectionArgs.add(globs[i]);
+        }
+        return selection.append(")").toString();
+    }
+
+    private static StringBuilder appendAnd(StringBuilder selectionBuilder) {
+        if (selectionBuilder.length() != 0)
+            selectionBuilder.append(" and ");
+        return selectionBuilder;
+    }
+}
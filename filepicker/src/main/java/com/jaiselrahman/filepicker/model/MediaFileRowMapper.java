@@ -0,0 +1,227 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.provider.BaseColumns._ID;
+import static android.provider.MediaStore.Audio.AlbumColumns.ALBUM_ID;
+import static android.provider.MediaStore.Files.FileColumns.MEDIA_TYPE;
+import static android.provider.MediaStore.Files.FileColumns.MIME_TYPE;
+import static android.provider.MediaStore.MediaColumns.BUCKET_DISPLAY_NAME;
+import static android.provider.MediaStore.MediaColumns.BUCKET_ID;
+import static android.provider.MediaStore.MediaColumns.DATA;
+import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
+import static android.provider.MediaStore.MediaColumns.DISPLAY_NAME;
+import static android.provider.MediaStore.MediaColumns.DURATION;
+import static android.provider.MediaStore.MediaColumns.HEIGHT;
+import static android.provider.MediaStore.MediaColumns.SIZE;
+import static android.provider.MediaStore.MediaColumns.WIDTH;
+
+/**
+ * Decodes {@link MediaFile}s from a cursor. Column indexes and the content uri are
+ * resolved once per cursor, so decoding a row is only a series of typed reads.
+ */
+class MediaFileRowMapper {
+    private final Configurations configs;
+    private final Uri contentUri;
+
+    private final int idIndex;
+    private final int nameIndex;
+    private final int dataIndex;
+    private final int sizeIndex;
+    private final int dateIndex;
+    private final int mimeTypeIndex;
+    private final int bucketIdIndex;
+    private final int bucketNameIndex;
+    private final int heightIndex;
+    private final int widthIndex;
+    private final int durationIndex;
+    private final int mediaTypeIndex;
+    private final int albumIdIndex;
+
+    private long decodeTimeNanos;
+
+    MediaFileRowMapper(@NonNull Cursor data, Configurations configs) {
+        this(data, configs, MediaFileLoader.getContentUri(configs));
+    }
+
+    /**
+     * @param contentUri collection the rows belong to, their uris are built from it.
+     */
+    MediaFileRowMapper(@NonNull Cursor data, Configurations configs, Uri contentUri) {
+        this.configs = configs;
+        this.contentUri = contentUri;
+
+        idIndex = data.getColumnIndex(_ID);
+        nameIndex = data.getColumnIndex(DISPLAY_NAME);
+        dataIndex = data.getColumnIndex(DATA);
+        sizeIndex = data.getColumnIndex(SIZE);
+        dateIndex = data.getColumnIndex(DATE_ADDED);
+        mimeTypeIndex = data.getColumnIndex(MIME_TYPE);
+        bucketIdIndex = data.getColumnIndex(BUCKET_ID);
+        bucketNameIndex = data.getColumnIndex(BUCKET_DISPLAY_NAME);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            heightIndex = data.getColumnIndex(HEIGHT);
+            widthIndex = data.getColumnIndex(WIDTH);
+        } else {
+            heightIndex = -1;
+            widthIndex = -1;
+        }
+        durationIndex = data.getColumnIndex(DURATION);
+        mediaTypeIndex = data.getColumnIndex(MEDIA_TYPE);
+        albumIdIndex = data.getColumnIndex(ALBUM_ID);
+    }
+
+    /**
+     * Decodes every row of {@code data}, skipping rows {@link #map} rejects.
+     *
+     * @param reverse whether to return the rows in the reverse order of the cursor.
+     * @return a {@link MediaFilePage} if {@link Configurations#isColumnarPages()} is set.
+     */
+    List<MediaFile> mapAll(@NonNull Cursor data, boolean reverse) {
+        long start = System.nanoTime();
+        List<MediaFile> mediaFiles = configs.isColumnarPages()
+                ? mapPage(data, reverse)
+                : mapList(data, reverse);
+        decodeTimeNanos = System.nanoTime() - start;
+        return mediaFiles;
+    }
+
+    /**
+     * Time spent in the last {@link #mapAll(Cursor, boolean)} call.
+     */
+    long getDecodeTimeNanos() {
+        return decodeTimeNanos;
+    }
+
+    private List<MediaFile> mapList(Cursor data, boolean reverse) {
+        ArrayList<MediaFile> mediaFiles = new ArrayList<>(data.getCount());
+        if (reverse ? data.moveToLast() : data.moveToFirst())
+            do {
+                MediaFile mediaFile = map(data, null);
+                if (mediaFile != null) {
+                    mediaFiles.add(mediaFile);
+                }
+            } while (reverse ? data.moveToPrevious() : data.moveToNext());
+        return mediaFiles;
+    }
+
+    private MediaFilePage mapPage(Cursor data, boolean reverse) {
+        MediaFilePage.Builder page = new MediaFilePage.Builder(contentUri, data.getCount());
+        if (reverse ? data.moveToLast() : data.moveToFirst())
+            do {
+                String path = dataIndex >= 0 ? data.getString(dataIndex) : null;
+                long size = getSize(data, path);
+                if (size < 0) continue;
+
+                String mimeType = mimeTypeIndex >= 0 ? data.getString(mimeTypeIndex) : null;
+                page.add(idIndex >= 0 ? data.getLong(idIndex) : 0,
+                        size,
+                        dateIndex >= 0 ? data.getLong(dateIndex) : 0,
+                        durationIndex >= 0 ? data.getLong(durationIndex) : 0,
+                        heightIndex >= 0 ? data.getLong(heightIndex) : 0,
+                        widthIndex >= 0 ? data.getLong(widthIndex) : 0,
+                        getMediaType(data, mimeType),
+                        getAlbumId(data),
+                        getName(data, path),
+                        path,
+                        mimeType,
+                        bucketIdIndex >= 0 ? data.getString(bucketIdIndex) : null,
+                        bucketNameIndex >= 0 ? data.getString(bucketNameIndex) : null);
+            } while (reverse ? data.moveToPrevious() : data.moveToNext());
+        return page.build();
+    }
+
+    @Nullable
+    MediaFile map(@NonNull Cursor data, @Nullable Uri uri) {
+        MediaFile mediaFile = new MediaFile();
+
+        String path = dataIndex >= 0 ? data.getString(dataIndex) : null;
+        mediaFile.setPath(path);
+
+        long size = getSize(data, path);
+        if (size < 0) return null;
+        mediaFile.setSize(size);
+
+        if (idIndex >= 0) mediaFile.setId(data.getLong(idIndex));
+        mediaFile.setName(getName(data, path));
+        if (dateIndex >= 0) mediaFile.setDate(data.getLong(dateIndex));
+        if (mimeTypeIndex >= 0) mediaFile.setMimeType(data.getString(mimeTypeIndex));
+        if (bucketIdIndex >= 0) mediaFile.setBucketId(data.getString(bucketIdIndex));
+        if (bucketNameIndex >= 0) mediaFile.setBucketName(data.getString(bucketNameIndex));
+        if (uri != null) {
+            mediaFile.setUri(uri);
+        } else {
+            mediaFile.setContentUri(contentUri);
+        }
+        if (durationIndex >= 0) mediaFile.setDuration(data.getLong(durationIndex));
+        mediaFile.setMediaType(getMediaType(data, mediaFile.getMimeType()));
+        if (heightIndex >= 0) mediaFile.setHeight(data.getLong(heightIndex));
+        if (widthIndex >= 0) mediaFile.setWidth(data.getLong(widthIndex));
+
+        mediaFile.setAlbumId(getAlbumId(data));
+        return mediaFile;
+    }
+
+    /**
+     * @return size of the row, or -1 if it has to be skipped.
+     */
+    private long getSize(Cursor data, @Nullable String path) {
+        long size = sizeIndex >= 0 ? data.getLong(sizeIndex) : 0;
+        if (size == 0 && path != null) {
+            //Check if File size is really zero
+            size = new java.io.File(path).length();
+            if (size <= 0 && configs.isSkipZeroSizeFiles())
+                return -1;
+        }
+        return size;
+    }
+
+    private String getName(Cursor data, @Nullable String path) {
+        String name = nameIndex >= 0 ? data.getString(nameIndex) : null;
+        if (TextUtils.isEmpty(name)) {
+            name = path != null ? path : "";
+            name = name.substring(name.lastIndexOf('/') + 1);
+        }
+        return name;
+    }
+
+    private int getMediaType(Cursor data, @Nullable String mimeType) {
+        int mediaType = mediaTypeIndex >= 0 ? data.getInt(mediaTypeIndex) : MediaFile.TYPE_FILE;
+        if ((mediaType == MediaFile.TYPE_FILE || mediaType > MediaFile.TYPE_MAX) && mimeType != null) {
+            //Double check correct MediaType
+            mediaType = MediaFileLoader.getMediaType(mimeType);
+        }
+        return mediaType;
+    }
+
+    private int getAlbumId(Cursor data) {
+        return albumIdIndex >= 0 ? data.getInt(albumIdIndex) : -1;
+    }
+}
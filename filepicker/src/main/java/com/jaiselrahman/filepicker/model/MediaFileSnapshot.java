@@ -0,0 +1,193 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.paging.DataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static android.provider.BaseColumns._ID;
+
+/**
+ * Rows loaded by the current keyed data source, in ({@link MediaFile#getDate()},
+ * {@link MediaFile#getId()}) descending order, so MediaStore changes can be applied to them
+ * instead of loading every page again.
+ * <p>
+ * After {@link #apply} the next data source takes the patched rows as its initial load, and
+ * the list differ only notifies the rows that changed.
+ */
+class MediaFileSnapshot {
+    // Past this many loaded rows, loading again is cheaper than keeping a copy
+    private static final int MAX_ROWS = 1000;
+
+    /**
+     * Loads rows matching the data source's selection and {@code clause}.
+     */
+    interface Loader {
+        List<MediaFile> load(String clause);
+    }
+
+    private final Loader loader;
+
+    private final ArrayList<MediaFile> files = new ArrayList<>();
+    private DataSource<?, MediaFile> owner;
+    private boolean atStart;
+    private boolean atEnd;
+    private boolean patched;
+
+    MediaFileSnapshot(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Called from the initial load of {@code dataSource}, which then owns this snapshot.
+     *
+     * @param fromStart whether the load starts from the first row
+     * @return the patched rows to load instead of querying, or null.
+     */
+    @Nullable
+    synchronized List<MediaFile> onLoadInitial(DataSource<?, MediaFile> dataSource, boolean fromStart) {
+        owner = dataSource;
+        if (patched) {
+            patched = false;
+            return new ArrayList<>(files);
+        }
+        files.clear();
+        atStart = fromStart;
+        atEnd = false;
+        return null;
+    }
+
+    /**
+     * Records rows loaded by {@code dataSource}, ignored if it is not the owner anymore.
+     *
+     * @param before whether the rows come before the loaded ones
+     * @param end    whether there are no more rows in that direction
+     */
+    synchronized void onLoaded(DataSource<?, MediaFile> dataSource, List<MediaFile> loaded,
+                               boolean before, boolean end) {
+        if (dataSource != owner) return;
+        if (before) {
+            files.addAll(0, loaded);
+            if (end) atStart = true;
+        } else {
+            files.addAll(loaded);
+            if (end) atEnd = true;
+        }
+    }
+
+    /**
+     * Applies API 30+ change notifications to the loaded rows. Deleted ids are removed,
+     * inserted and updated ids are loaded again and put back by their sort key.
+     *
+     * @param flags {@link ContentResolver#NOTIFY_INSERT} and others for each uri
+     * @return false if the changes can't be applied, like when a uri has no id or
+     * flags are unknown, and the list has to be loaded again.
+     */
+    boolean apply(List<Uri> uris, int[] flags) {
+        boolean applied = applyChanges(uris, flags);
+        if (!applied) discard();
+        return applied;
+    }
+
+    /**
+     * Drops patched rows, so the next data source loads from MediaStore.
+     */
+    synchronized void discard() {
+        patched = false;
+    }
+
+    private boolean applyChanges(List<Uri> uris, int[] flags) {
+        Set<Long> deleted = new HashSet<>();
+        Set<Long> changed = new HashSet<>();
+        for (int i = 0; i < uris.size(); i++) {
+            long id = MediaFileLoader.getId(uris.get(i));
+            if (id < 0 || flags[i] <= 0) return false;
+            if ((flags[i] & ContentResolver.NOTIFY_DELETE) != 0) {
+                deleted.add(id);
+            } else {
+                changed.add(id);
+            }
+        }
+        changed.removeAll(deleted);
+
+        synchronized (this) {
+            if ((owner == null && !patched) || files.size() > MAX_ROWS) return false;
+        }
+
+        List<MediaFile> loaded = changed.isEmpty() ? new ArrayList<MediaFile>() : loader.load(inClause(changed));
+
+        synchronized (this) {
+            if (owner == null && !patched) return false;
+
+            deleted.addAll(changed);
+            for (int i = files.size() - 1; i >= 0; i--) {
+                if (deleted.contains(files.get(i).getId())) {
+                    files.remove(i);
+                }
+            }
+            for (MediaFile mediaFile : loaded) {
+                insert(mediaFile);
+            }
+
+            // Loads of the current data source are for the rows before patching
+            owner = null;
+            patched = true;
+            return true;
+        }
+    }
+
+    private void insert(MediaFile mediaFile) {
+        int low = 0;
+        int high = files.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comesBefore(files.get(mid), mediaFile)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // Rows outside the loaded range come with the pages next to it
+        if ((low == 0 && !atStart) || (low == files.size() && !atEnd)) return;
+        files.add(low, mediaFile);
+    }
+
+    private static boolean comesBefore(MediaFile a, MediaFile b) {
+        if (a.getDate() != b.getDate()) return a.getDate() > b.getDate();
+        return a.getId() > b.getId();
+    }
+
+    private static String inClause(Set<Long> ids) {
+        StringBuilder clause = new StringBuilder(_ID).append(" IN (");
+        boolean first = true;
+        for (long id : ids) {
+            if (!first) clause.append(", ");
+            clause.append(id);
+            first = false;
+        }
+        return clause.append(")").toString();
+    }
+}
@@ -17,64 +17,174 @@
 package com.jaiselrahman.filepicker.model;
 
 import android.content.ContentResolver;
-import android.database.ContentObserver;
+import android.content.Context;
+import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.paging.DataSource;
 import androidx.paging.LivePagedListBuilder;
 import androidx.paging.PagedList;
 
 import com.jaiselrahman.filepicker.config.Configurations;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 public class MediaFileViewModel extends ViewModel {
+    // Past this many changed uris, rescanning ignored folders is cheaper than looking up each one
+    private static final int MAX_CHANGES_TO_APPLY = 32;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    private Configurations configs;
     private ContentResolver contentResolver;
     public LiveData<PagedList<MediaFile>> mediaFiles;
+    /**
+     * Files per month, only with {@link Configurations#isDateSections()}.
+     */
+    public LiveData<MonthHistogram> months;
+    private MutableLiveData<MonthHistogram> monthHistogram = new MutableLiveData<>();
+    @Nullable
+    private MediaFileDataSource.Factory sectionedFactory;
 
-    private ContentObserver contentObserver = new ContentObserver(null) {
-        @Override
-        public void onChange(boolean selfChange) {
-            refresh();
-        }
-    };
+    private MediaRepository repository;
+    private MediaFileHydrator hydrator;
+    private MediaChangeObserver contentObserver;
+    @Nullable
+    private MediaFileSnapshot snapshot;
 
-    private MediaFileViewModel(ContentResolver contentResolver, Configurations configs, Long dirId) {
+    private MediaFileViewModel(ContentResolver contentResolver, @Nullable Context context, Configurations configs, Long dirId) {
+        this.configs = configs;
         this.contentResolver = contentResolver;
+        this.repository = MediaRepository.acquire(configs);
+        this.hydrator = new MediaFileHydrator(contentResolver, configs);
 
-        MediaFileDataSource.Factory mediaFileDataSourceFactory = new MediaFileDataSource.Factory(contentResolver, configs, dirId);
+        DataSource.Factory<?, MediaFile> mediaFileDataSourceFactory;
+        boolean placeholders = false;
+        if (configs.isDateSections()) {
+            sectionedFactory = new MediaFileDataSource.Factory(contentResolver, context, configs, dirId);
+            mediaFileDataSourceFactory = sectionedFactory;
+            placeholders = true;
+        } else if (MediaCollection.canMerge(configs)) {
+            MediaFileMergedDataSource.Factory factory = new MediaFileMergedDataSource.Factory(contentResolver, context, configs, dirId);
+            snapshot = factory.getSnapshot();
+            mediaFileDataSourceFactory = factory;
+        } else if (configs.isKeysetPaging()) {
+            MediaFileKeyedDataSource.Factory factory = new MediaFileKeyedDataSource.Factory(contentResolver, context, configs, dirId);
+            snapshot = factory.getSnapshot();
+            mediaFileDataSourceFactory = factory;
+        } else {
+            mediaFileDataSourceFactory = new MediaFileDataSource.Factory(contentResolver, context, configs, dirId);
+            placeholders = configs.isPlaceholders();
+        }
 
-        mediaFiles = new LivePagedListBuilder<>(
+        mediaFiles = buildPagedList(
                 mediaFileDataSourceFactory,
-                new PagedList.Config.Builder()
-                        .setPageSize(Configurations.PAGE_SIZE)
-                        .setInitialLoadSizeHint(15)
-                        .setMaxSize(Configurations.PAGE_SIZE * 3)
-                        .setPrefetchDistance(Configurations.PREFETCH_DISTANCE)
-                        .setEnablePlaceholders(false)
-                        .build()
-        ).build();
-
-        contentResolver.registerContentObserver(mediaFileDataSourceFactory.getUri(), true, contentObserver);
+                PagingPolicy.of(context, configs).getConfig(placeholders)
+        );
+        months = monthHistogram;
+        if (sectionedFactory != null) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadMonths();
+                }
+            });
+        }
+
+        contentObserver = new MediaChangeObserver(context, configs) {
+            @Override
+            protected void onMediaChanged(List<Uri> uris, int[] flags) {
+                if (uris.size() > MAX_CHANGES_TO_APPLY) {
+                    IgnoredFoldersCache.onChange(MediaFileViewModel.this.contentResolver, null,
+                            MediaChangeObserver.FLAGS_UNKNOWN);
+                } else {
+                    for (int i = 0; i < uris.size(); i++) {
+                        IgnoredFoldersCache.onChange(MediaFileViewModel.this.contentResolver, uris.get(i), flags[i]);
+                    }
+                }
+
+                repository.clear();
+                hydrator.clear();
+                MediaFileIndex.markStale(MediaFileViewModel.this.configs);
+                if (sectionedFactory != null) loadMonths();
+
+                if (snapshot != null && uris.size() <= MAX_CHANGES_TO_APPLY && snapshot.apply(uris, flags)) {
+                    invalidate();
+                } else {
+                    refresh();
+                }
+            }
+        };
+        contentResolver.registerContentObserver(MediaFileLoader.getContentUri(configs), true, contentObserver);
+    }
+
+    private void loadMonths() {
+        MonthHistogram histogram = sectionedFactory.getMonthHistogram();
+        if (histogram != null) monthHistogram.postValue(histogram);
+    }
+
+    private static <Key> LiveData<PagedList<MediaFile>> buildPagedList(
+            DataSource.Factory<Key, MediaFile> factory, PagedList.Config config) {
+        return new LivePagedListBuilder<>(factory, config).build();
     }
 
     @Override
     protected void onCleared() {
         contentResolver.unregisterContentObserver(contentObserver);
+        contentObserver.cancel();
+        repository.release();
+    }
+
+    /**
+     * Fills in files loaded with {@link Configurations#isSkeletonPages()}.
+     */
+    public MediaFileHydrator getHydrator() {
+        return hydrator;
     }
 
     public void refresh() {
+        repository.clear();
+        hydrator.clear();
+        NoMediaDirs.invalidate();
+        MediaFileIndex.markStale(configs);
+        if (snapshot != null) snapshot.discard();
+        invalidate();
+    }
+
+    private void invalidate() {
         if (mediaFiles.getValue() != null)
             mediaFiles.getValue().getDataSource().invalidate();
     }
 
     public static class Factory extends ViewModelProvider.NewInstanceFactory {
         private ContentResolver contentResolver;
+        private Context context;
         private Configurations configs;
         private Long dirId;
 
+        public Factory(Context context, Configurations configs, Long dirId) {
+            this(context.getContentResolver(), context.getApplicationContext(), configs, dirId);
+        }
+
+        /**
+         * @deprecated Use {@link #Factory(Context, Configurations, Long)}, without a Context
+         * MediaStore changes can only be tracked through content observer notifications.
+         */
+        @Deprecated
         public Factory(ContentResolver contentResolver, Configurations configs, Long dirId) {
+            this(contentResolver, null, configs, dirId);
+        }
+
+        private Factory(ContentResolver contentResolver, @Nullable Context context, Configurations configs, Long dirId) {
             this.contentResolver = contentResolver;
+            this.context = context;
             this.configs = configs;
             this.dirId = dirId;
         }
@@ -83,7 +193,7 @@ public class MediaFileViewModel extends ViewModel {
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
-            return (T) new MediaFileViewModel(contentResolver, configs, dirId);
+            return (T) new MediaFileViewModel(contentResolver, context, configs, dirId);
         }
     }
 }
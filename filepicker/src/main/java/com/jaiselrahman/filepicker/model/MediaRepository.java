@@ -0,0 +1,239 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import androidx.annotation.Nullable;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Files loaded by the open picker screens with the same filter, shared across them so going
+ * back to a folder, or into a folder after all files were loaded, doesn't query again.
+ * <p>
+ * For each folder, and for all files, only the newest files loaded without a gap are kept,
+ * in the order of {@link MediaFileQuery#SORT_DESC}. A folder can be served from all files:
+ * their newest files include the newest files of every folder.
+ * <p>
+ * Screens {@link #acquire} the repository of their filter and {@link #release} it when
+ * closed. The repository, and the ignored folders no other repository needs, are dropped
+ * with the last screen.
+ */
+class MediaRepository {
+    // Past this many files, a folder or all files are loaded from MediaStore again
+    private static final int MAX_ROWS = 5000;
+
+    private static final HashMap<String, MediaRepository> repositories = new HashMap<>();
+
+    private final String key;
+    private final Configurations configs;
+    private int references;
+
+    // Keyed by folder, null for all files
+    private final HashMap<Long, Rows> rows = new HashMap<>();
+
+    private static class Rows {
+        final ArrayList<MediaFile> files = new ArrayList<>();
+        boolean complete;
+    }
+
+    private MediaRepository(String key, Configurations configs) {
+        this.key = key;
+        this.configs = configs;
+    }
+
+    static MediaRepository acquire(Configurations configs) {
+        String key = getKey(configs);
+        synchronized (repositories) {
+            MediaRepository repository = repositories.get(key);
+            if (repository == null) {
+                repository = new MediaRepository(key, configs);
+                repositories.put(key, repository);
+            }
+            repository.references++;
+            return repository;
+        }
+    }
+
+    void release() {
+        synchronized (repositories) {
+            if (--references > 0) return;
+            repositories.remove(key);
+
+            String ignoreKey = FilterKey.ofIgnoreFilters(configs);
+            for (MediaRepository repository : repositories.values()) {
+                if (FilterKey.ofIgnoreFilters(repository.configs).equals(ignoreKey)) return;
+            }
+            IgnoredFoldersCache.evict(configs);
+        }
+    }
+
+    /**
+     * @return the repository of {@code configs} if a screen has it open, or null. Columnar
+     * pages are not kept, copying their rows into the repository would create every row.
+     */
+    @Nullable
+    static MediaRepository get(Configurations configs) {
+        if (configs.isColumnarPages()) return null;
+        synchronized (repositories) {
+            return repositories.get(getKey(configs));
+        }
+    }
+
+    /**
+     * Merged collections build uris of their own collection, so they are kept apart.
+     */
+    private static String getKey(Configurations configs) {
+        return FilterKey.of(configs) + MediaCollection.canMerge(configs);
+    }
+
+    /**
+     * Drops every loaded file, like after MediaStore changed.
+     */
+    synchronized void clear() {
+        rows.clear();
+    }
+
+    /**
+     * @return {@code limit} files of folder {@code dirId} starting at {@code offset}, or
+     * null if they are not all loaded.
+     */
+    @Nullable
+    synchronized List<MediaFile> get(@Nullable Long dirId, int offset, int limit) {
+        Rows dirRows = rows.get(dirId);
+        if (dirRows != null) {
+            List<MediaFile> files = subList(dirRows.files, dirRows.complete, offset, limit);
+            if (files != null) return files;
+        }
+        if (dirId == null) return null;
+
+        Rows allRows = rows.get(null);
+        if (allRows == null) return null;
+        List<MediaFile> dirFiles = filter(allRows.files, dirId, offset + limit);
+        boolean complete = allRows.complete || dirFiles.size() >= offset + limit;
+        return subList(dirFiles, complete, offset, limit);
+    }
+
+    /**
+     * @return {@code limit} files of folder {@code dirId} after {@code key}, or null if they
+     * are not all loaded.
+     */
+    @Nullable
+    synchronized List<MediaFile> getAfter(@Nullable Long dirId, MediaFileKeyedDataSource.Key key,
+                                          boolean inclusive, int limit) {
+        Rows dirRows = rows.get(dirId);
+        if (dirRows != null) {
+            int offset = indexAfter(dirRows.files, key, inclusive);
+            List<MediaFile> files = subList(dirRows.files, dirRows.complete, offset, limit);
+            if (files != null) return files;
+        }
+        if (dirId == null) return null;
+
+        Rows allRows = rows.get(null);
+        if (allRows == null) return null;
+        List<MediaFile> dirFiles = filter(allRows.files, dirId, Integer.MAX_VALUE);
+        int offset = indexAfter(dirFiles, key, inclusive);
+        boolean complete = allRows.complete || dirFiles.size() >= offset + limit;
+        return subList(dirFiles, complete, offset, limit);
+    }
+
+    /**
+     * Keeps files loaded for folder {@code dirId} at {@code offset}, if they follow the kept
+     * files without a gap.
+     */
+    synchronized void put(@Nullable Long dirId, int offset, List<MediaFile> files, int limit) {
+        Rows dirRows = rows.get(dirId);
+        if (dirRows == null) {
+            if (offset != 0) return;
+            dirRows = new Rows();
+            rows.put(dirId, dirRows);
+        }
+        if (dirRows.complete || offset != dirRows.files.size()) return;
+        if (dirRows.files.size() + files.size() > MAX_ROWS) return;
+
+        dirRows.files.addAll(files);
+        dirRows.complete = limit <= 0 || files.size() < limit;
+    }
+
+    /**
+     * Keeps files loaded for folder {@code dirId} after {@code key}, if they follow the kept
+     * files without a gap.
+     */
+    synchronized void putAfter(@Nullable Long dirId, @Nullable MediaFileKeyedDataSource.Key key,
+                               List<MediaFile> files, int limit) {
+        Rows dirRows = rows.get(dirId);
+        int offset;
+        if (key == null) {
+            offset = 0;
+        } else if (dirRows == null || dirRows.files.isEmpty()) {
+            return;
+        } else {
+            MediaFile last = dirRows.files.get(dirRows.files.size() - 1);
+            if (last.getDate() != key.date || last.getId() != key.id) return;
+            offset = dirRows.files.size();
+        }
+        put(dirId, offset, files, limit);
+    }
+
+    @Nullable
+    private static List<MediaFile> subList(List<MediaFile> files, boolean complete, int offset, int limit) {
+        if (offset < 0) return null;
+        if (files.size() >= offset + limit) {
+            return new ArrayList<>(files.subList(offset, offset + limit));
+        }
+        if (complete) {
+            return new ArrayList<>(files.subList(Math.min(offset, files.size()), files.size()));
+        }
+        return null;
+    }
+
+    private static List<MediaFile> filter(List<MediaFile> files, long dirId, int limit) {
+        String bucketId = String.valueOf(dirId);
+        List<MediaFile> dirFiles = new ArrayList<>();
+        for (int i = 0; i < files.size() && dirFiles.size() < limit; i++) {
+            MediaFile mediaFile = files.get(i);
+            if (bucketId.equals(mediaFile.getBucketId())) {
+                dirFiles.add(mediaFile);
+            }
+        }
+        return dirFiles;
+    }
+
+    /**
+     * @return index of the first file after {@code key} in files sorted newest first.
+     */
+    private static int indexAfter(List<MediaFile> files, MediaFileKeyedDataSource.Key key, boolean inclusive) {
+        int low = 0;
+        int high = files.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            MediaFile mediaFile = files.get(mid);
+            boolean after = mediaFile.getDate() < key.date
+                    || (mediaFile.getDate() == key.date
+                    && (inclusive ? mediaFile.getId() <= key.id : mediaFile.getId() < key.id));
+            if (after) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.Context;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import androidx.annotation.Nullable;
+
+class MediaStoreVersion {
+    static final long NO_GENERATION = -1;
+
+    /**
+     * @return MediaStore version, which changes whenever its database is recreated,
+     * or null if it is not available.
+     */
+    @Nullable
+    static String getVersion(@Nullable Context context) {
+        if (context == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return null;
+        }
+        return MediaStore.getVersion(context);
+    }
+
+    /**
+     * @return generation of the external volume, which grows on every change to it,
+     * or {@link #NO_GENERATION} if it is not available.
+     * <p>
+     * Generations are counted per volume, but rows are queried from every external volume at
+     * once. With more than one, like with an SD card, changes can't be found by comparing a
+     * single generation, so there is none.
+     */
+    static long getGeneration(@Nullable Context context) {
+        if (context == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return NO_GENERATION;
+        }
+        if (MediaStore.getExternalVolumeNames(context).size() > 1) {
+            return NO_GENERATION;
+        }
+        return MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.widget.SectionIndexer;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContentResolverCompat;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+
+import static android.provider.MediaStore.MediaColumns.DATE_ADDED;
+
+/**
+ * Files per month of {@link MediaFile#getDate()}, newest month first, as sections of a list
+ * sorted by date. The position of a month is the number of files in the months after it, so
+ * it can be scrolled to without loading the pages before it.
+ */
+public final class MonthHistogram implements SectionIndexer {
+    private static final String MONTH = "month";
+
+    private final int[] positions;
+    private final int totalCount;
+    private final String[] labels;
+
+    /**
+     * @param months year * 12 + month, newest first
+     */
+    private MonthHistogram(int[] months, int[] counts, int size) {
+        this.positions = new int[size];
+        this.labels = new String[size];
+
+        SimpleDateFormat format = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
+        Calendar calendar = Calendar.getInstance();
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            positions[i] = position;
+            position += counts[i];
+
+            calendar.clear();
+            calendar.set(months[i] / 12, months[i] % 12, 1);
+            labels[i] = format.format(calendar.getTime());
+        }
+        this.totalCount = position;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return labels of the months, like "Mar 2021".
+     */
+    @Override
+    public String[] getSections() {
+        return labels;
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        if (positions.length == 0) return 0;
+        return positions[Math.max(0, Math.min(sectionIndex, positions.length - 1))];
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        int index = Arrays.binarySearch(positions, position);
+        if (index < 0) index = -index - 2;
+        return Math.max(index, 0);
+    }
+
+    /**
+     * Counts files per month with the selection of {@code query}. Before Q this is a single
+     * GROUP BY query, from Q on MediaStore no longer accepts one, so only the dates are
+     * queried and counted here.
+     */
+    @Nullable
+    static MonthHistogram query(ContentResolver contentResolver, MediaFileQuery query) {
+        String selection = query.selection.isEmpty() ? "1" : query.selection;
+        Cursor data;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            data = ContentResolverCompat.query(contentResolver, query.uri,
+                    new String[]{"strftime('%Y', " + DATE_ADDED + ", 'unixepoch', 'localtime') * 12"
+                            + " + strftime('%m', " + DATE_ADDED + ", 'unixepoch', 'localtime') - 1 AS " + MONTH,
+                            "COUNT(*)"},
+                    selection + ") GROUP BY (" + MONTH, query.selectionArgs, MONTH + " DESC", null);
+        } else {
+            data = ContentResolverCompat.query(contentResolver, query.uri, new String[]{DATE_ADDED},
+                    selection, query.selectionArgs, MediaFileQuery.SORT_DESC, null);
+        }
+        if (data == null) return null;
+
+        try {
+            int size = 0;
+            int[] months = new int[16];
+            int[] counts = new int[16];
+            Calendar calendar = Calendar.getInstance();
+            while (data.moveToNext()) {
+                int month;
+                int count;
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                    month = data.getInt(0);
+                    count = data.getInt(1);
+                } else {
+                    calendar.setTimeInMillis(data.getLong(0) * 1000);
+                    month = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+                    count = 1;
+                }
+
+                if (size > 0 && months[size - 1] == month) {
+                    counts[size - 1] += count;
+                    continue;
+                }
+                if (size == months.length) {
+                    months = Arrays.copyOf(months, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                months[size] = month;
+                counts[size] = count;
+                size++;
+            }
+            return new MonthHistogram(months, counts, size);
+        } finally {
+            data.close();
+        }
+    }
+}
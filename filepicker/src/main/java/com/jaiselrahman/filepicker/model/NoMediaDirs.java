@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContentResolverCompat;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.utils.FileUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static android.provider.MediaStore.MediaColumns.DATA;
+import static android.provider.MediaStore.MediaColumns.DISPLAY_NAME;
+import static com.jaiselrahman.filepicker.model.MediaStoreVersion.NO_GENERATION;
+
+/**
+ * Looks up the directories containing a .nomedia file from MediaStore, which indexes them
+ * in the Files table, so ignoring them does not need a filesystem check per directory.
+ * <p>
+ * The result is kept for the MediaStore version and generation it was loaded at, and
+ * until {@link #invalidate} where there is no generation.
+ */
+class NoMediaDirs {
+    private static Set<String> dirs;
+    private static String version;
+    private static long generation = NO_GENERATION;
+    private static int invalidations;
+
+    /**
+     * @return directories containing .nomedia, or null if configs does not ask to
+     * resolve them from MediaStore.
+     */
+    @Nullable
+    static Set<String> get(ContentResolver contentResolver, @Nullable Context context, Configurations configs) {
+        if (!configs.isIgnoreNoMediaDir() || !configs.isNoMediaFromMediaStore()) {
+            return null;
+        }
+        return load(contentResolver, context);
+    }
+
+    /**
+     * @return directories containing .nomedia, whatever the configs.
+     */
+    @NonNull
+    static Set<String> load(ContentResolver contentResolver, @Nullable Context context) {
+        String currentVersion = MediaStoreVersion.getVersion(context);
+        long currentGeneration = MediaStoreVersion.getGeneration(context);
+
+        int stamp;
+        synchronized (NoMediaDirs.class) {
+            if (dirs != null && TextUtils.equals(version, currentVersion) && generation == currentGeneration) {
+                return dirs;
+            }
+            stamp = invalidations;
+        }
+
+        Set<String> loaded = Collections.unmodifiableSet(query(contentResolver));
+
+        synchronized (NoMediaDirs.class) {
+            // Left out if a change was reported while querying
+            if (stamp == invalidations) {
+                dirs = loaded;
+                version = currentVersion;
+                generation = currentGeneration;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the loaded directories, like when a .nomedia file is added or deleted.
+     */
+    static synchronized void invalidate() {
+        dirs = null;
+        invalidations++;
+    }
+
+    private static Set<String> query(ContentResolver contentResolver) {
+        Uri uri = MediaStore.Files.getContentUri("external");
+        String[] projection = new String[]{DATA};
+
+        String selection;
+        String[] selectionArgs;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            selection = DISPLAY_NAME + " = ?";
+            selectionArgs = new String[]{MediaStore.MEDIA_IGNORE_FILENAME};
+        } else {
+            selection = DATA + " LIKE ?";
+            selectionArgs = new String[]{"%/" + MediaStore.MEDIA_IGNORE_FILENAME};
+        }
+
+        Set<String> dirs = new HashSet<>();
+
+        Cursor cursor = ContentResolverCompat.query(contentResolver, uri, projection,
+                selection, selectionArgs, null, null);
+        if (cursor == null) {
+            return dirs;
+        }
+
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    String path = cursor.getString(0);
+                    if (path != null) {
+                        dirs.add(FileUtils.getParent(path));
+                    }
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        return dirs;
+    }
+}
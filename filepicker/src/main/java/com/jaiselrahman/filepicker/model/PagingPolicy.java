@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.DisplayMetrics;
+
+import androidx.annotation.Nullable;
+import androidx.paging.PagedList;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+/**
+ * Sizes pages from the grid visible on screen and from how long pages took to query so far.
+ * <p>
+ * The initial load covers two screens of cells. Unless set in {@link Configurations}, a page
+ * is as many rows as load in about {@link #TARGET_PAGE_MILLIS}, but never less than a screen,
+ * and is rounded to whole grid rows. Next pages are loaded a third of a page before the end,
+ * or {@link Configurations#PREFETCH_DISTANCE} items if that is more.
+ */
+class PagingPolicy {
+    private static final long TARGET_PAGE_MILLIS = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DEFAULT_VISIBLE_ITEMS = 15;
+
+    // Moving average of the time to query a row, 0 until a full page is queried
+    private static long nanosPerRow;
+
+    private final Configurations configs;
+    private final int spanCount;
+    private final int visibleItems;
+
+    private PagingPolicy(Configurations configs, int spanCount, int visibleItems) {
+        this.configs = configs;
+        this.spanCount = spanCount;
+        this.visibleItems = visibleItems;
+    }
+
+    static PagingPolicy of(@Nullable Context context, Configurations configs) {
+        if (context == null) {
+            return new PagingPolicy(configs, 1, DEFAULT_VISIBLE_ITEMS);
+        }
+
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int spanCount = context.getResources().getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE
+                ? configs.getLandscapeSpanCount() : configs.getPortraitSpanCount();
+        spanCount = Math.max(spanCount, 1);
+
+        // Grid cells are square and fill the width
+        int cellSize = Math.max(metrics.widthPixels / spanCount, 1);
+        int rows = (metrics.heightPixels + cellSize - 1) / cellSize;
+        return new PagingPolicy(configs, spanCount, Math.max(spanCount * rows, 1));
+    }
+
+    /**
+     * Records that a query of {@code rows} rows took {@code nanos}, until its first window
+     * was filled.
+     */
+    static synchronized void onRowsLoaded(int rows, long nanos) {
+        if (rows <= 0) return;
+        long rowNanos = nanos / rows;
+        nanosPerRow = nanosPerRow == 0 ? rowNanos : (nanosPerRow * 3 + rowNanos) / 4;
+    }
+
+    private static synchronized long getNanosPerRow() {
+        return nanosPerRow;
+    }
+
+    @SuppressWarnings("deprecation")
+    int getPageSize() {
+        if (configs.getPageSize() > 0) return configs.getPageSize();
+
+        int pageSize = Configurations.PAGE_SIZE;
+        long rowNanos = getNanosPerRow();
+        if (rowNanos > 0) {
+            pageSize = (int) Math.min(TARGET_PAGE_MILLIS * 1000000 / rowNanos, MAX_PAGE_SIZE);
+        }
+        pageSize = Math.max(pageSize, visibleItems);
+        return (pageSize + spanCount - 1) / spanCount * spanCount;
+    }
+
+    int getInitialLoadSize() {
+        return visibleItems * 2;
+    }
+
+    PagedList.Config getConfig() {
+        return getConfig(false);
+    }
+
+    /**
+     * @param placeholders whether the data source counts its rows, so the list has its full
+     *                     size before they are loaded.
+     */
+    @SuppressWarnings("deprecation")
+    PagedList.Config getConfig(boolean placeholders) {
+        int pageSize = getPageSize();
+        int prefetchDistance = configs.getPrefetchDistance();
+        if (prefetchDistance <= 0) {
+            prefetchDistance = Math.max(Math.max(pageSize / 3, visibleItems), Configurations.PREFETCH_DISTANCE);
+        }
+
+        return new PagedList.Config.Builder()
+                .setPageSize(pageSize)
+                .setInitialLoadSizeHint(getInitialLoadSize())
+                .setMaxSize(Math.max(pageSize * 3, pageSize + 2 * prefetchDistance))
+                .setPrefetchDistance(prefetchDistance)
+                .setEnablePlaceholders(placeholders)
+                .build();
+    }
+}
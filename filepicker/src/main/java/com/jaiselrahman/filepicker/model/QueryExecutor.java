@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jaiselrahman.filepicker.activity.FilePickerActivity.TAG;
+
+/**
+ * Runs identical queries made at the same time, like after a rotation or by a refresh and a
+ * change notification together, only once. Callers arriving while a query is running wait
+ * for it and get the same result. Lists are returned unmodifiable, other results must not be
+ * modified.
+ */
+class QueryExecutor {
+    private static final char SEPARATOR = '\0';
+
+    private static final HashMap<String, Call<?>> calls = new HashMap<>();
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Queries and decodes the result.
+     */
+    interface Loader<T> {
+        T load();
+    }
+
+    private static class Call<T> {
+        final CountDownLatch done = new CountDownLatch(1);
+        T result;
+        Throwable error;
+    }
+
+    /**
+     * @return the result of {@code loader}, or of the running call with the same {@code key}.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T execute(String key, Loader<T> loader) {
+        Call<T> call;
+        boolean running;
+        synchronized (calls) {
+            call = (Call<T>) calls.get(key);
+            running = call != null;
+            if (!running) {
+                call = new Call<>();
+                calls.put(key, call);
+            }
+        }
+
+        if (running) {
+            try {
+                call.done.await();
+                int hitCount = hits.incrementAndGet();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "QueryExecutor: joined a running query, " + hitCount + " hits, "
+                            + misses.get() + " misses");
+                }
+                if (call.error != null) throw rethrow(call.error);
+                return call.result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                misses.incrementAndGet();
+                return shared(loader.load());
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            call.result = shared(loader.load());
+            return call.result;
+        } catch (Throwable e) {
+            call.error = e;
+            throw rethrow(e);
+        } finally {
+            synchronized (calls) {
+                calls.remove(key);
+            }
+            call.done.countDown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T shared(T result) {
+        if (result instanceof List) {
+            return (T) Collections.unmodifiableList((List<?>) result);
+        }
+        return result;
+    }
+
+    /**
+     * Throws {@code error} as is if it is unchecked, so waiting callers fail like the one that
+     * queried, and wraps it otherwise.
+     */
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        throw new RuntimeException(error);
+    }
+
+    /**
+     * @return a key for {@link #execute} from everything that decides the result of a query.
+     * {@code kind} tells apart loaders decoding the same query differently.
+     */
+    static String key(String kind, Uri uri, @Nullable String[] projection, @Nullable String selection,
+                      @Nullable String[] selectionArgs, @Nullable String sortOrder, int limit, int offset) {
+        StringBuilder key = new StringBuilder(kind)
+                .append(SEPARATOR).append(uri)
+                .append(SEPARATOR).append(selection)
+                .append(SEPARATOR).append(sortOrder)
+                .append(SEPARATOR).append(limit)
+                .append(SEPARATOR).append(offset);
+        if (projection != null) {
+            for (String column : projection) {
+                key.append(SEPARATOR).append(column);
+            }
+        }
+        key.append(SEPARATOR);
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs) {
+                key.append(SEPARATOR).append(arg);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return calls that got the result of a running call.
+     */
+    static int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return calls that queried MediaStore.
+     */
+    static int getMissCount() {
+        return misses.get();
+    }
+}
@@ -17,30 +17,71 @@
 package com.jaiselrahman.filepicker.utils;
 
 import android.provider.MediaStore;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
 
 import com.jaiselrahman.filepicker.config.Configurations;
+import com.jaiselrahman.filepicker.config.IgnorePathMatcher;
 
 import java.io.File;
-import java.util.regex.Matcher;
+import java.util.Set;
 
 import static java.io.File.separatorChar;
 
 public class FileUtils {
+    private static final int NO_MEDIA_CACHE_SIZE = 2048;
+
+    // Directory -> whether it or one of its ancestors has a .nomedia file.
+    // Kept for the whole process, so it survives data source invalidations.
+    private static final LruCache<String, Boolean> noMediaDirs = new LruCache<>(NO_MEDIA_CACHE_SIZE);
+
     public static boolean toIgnoreFolder(String path, Configurations configs) {
+        return toIgnoreFolder(path, configs, null);
+    }
+
+    /**
+     * @param noMediaDirs directories known to contain .nomedia, if given these are used
+     *                    instead of checking the filesystem.
+     */
+    public static boolean toIgnoreFolder(String path, Configurations configs, @Nullable Set<String> noMediaDirs) {
         String parent = getParent(path);
         if (configs.isIgnoreHiddenFile() && getName(parent).startsWith(".")) return true;
-        if (configs.getIgnorePathMatchers() != null) {
-            for (Matcher matcher : configs.getIgnorePathMatchers()) {
-                if (matcher.reset(path).matches()) {
-                    return true;
-                }
-            }
+        IgnorePathMatcher ignorePathMatcher = configs.getIgnorePathMatcher();
+        if (ignorePathMatcher != null && ignorePathMatcher.matches(path)) return true;
+        return isNoMediaFolder(parent, configs, noMediaDirs);
+    }
+
+    /**
+     * @return whether everything under {@code dir} is ignored for a .nomedia file in it or one
+     * of its ancestors.
+     */
+    public static boolean isNoMediaFolder(String dir, Configurations configs, @Nullable Set<String> noMediaDirs) {
+        if (!configs.isIgnoreNoMediaDir()) return false;
+        if (noMediaDirs != null) {
+            return hasNoMedia(dir, noMediaDirs);
         }
-        if (configs.isIgnoreNoMediaDir()) {
-            while (!parent.isEmpty() && !new File(parent, MediaStore.MEDIA_IGNORE_FILENAME).exists()) {
-                parent = getParent(parent);
-            }
-            return !parent.isEmpty();
+        return hasNoMedia(dir);
+    }
+
+    public static void clearNoMediaCache() {
+        noMediaDirs.evictAll();
+    }
+
+    private static boolean hasNoMedia(String dir) {
+        if (dir.isEmpty()) return false;
+        Boolean noMedia = noMediaDirs.get(dir);
+        if (noMedia == null) {
+            noMedia = new File(dir, MediaStore.MEDIA_IGNORE_FILENAME).exists() || hasNoMedia(getParent(dir));
+            noMediaDirs.put(dir, noMedia);
+        }
+        return noMedia;
+    }
+
+    private static boolean hasNoMedia(String dir, Set<String> noMediaDirs) {
+        while (!dir.isEmpty()) {
+            if (noMediaDirs.contains(dir)) return true;
+            dir = getParent(dir);
         }
         return false;
     }
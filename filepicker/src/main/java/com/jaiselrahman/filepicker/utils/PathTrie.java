@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.utils;
+
+import java.util.HashMap;
+
+import static java.io.File.separatorChar;
+
+/**
+ * Set of directories, matched by path segment, that answers whether a path is inside
+ * any of them in time proportional to the depth of the path.
+ */
+public class PathTrie {
+    private final Node root = new Node();
+    private int size;
+
+    public void add(String dir) {
+        Node node = root;
+        int start = 0;
+        int length = dir.length();
+        while (start <= length) {
+            int end = dir.indexOf(separatorChar, start);
+            if (end < 0) end = length;
+            if (end > start) {
+                String segment = dir.substring(start, end);
+                Node child = node.children != null ? node.children.get(segment) : null;
+                if (child == null) {
+                    if (node.children == null) node.children = new HashMap<>();
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            start = end + 1;
+        }
+        if (!node.terminal) {
+            node.terminal = true;
+            size++;
+        }
+    }
+
+    /**
+     * @return true if {@code path} is one of the added directories or inside one of them.
+     */
+    public boolean containsPrefixOf(String path) {
+        Node node = root;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            if (node.terminal) return true;
+            int end = path.indexOf(separatorChar, start);
+            if (end < 0) end = length;
+            if (end > start) {
+                if (node.children == null) return false;
+                node = node.children.get(path.substring(start, end));
+                if (node == null) return false;
+            }
+            start = end + 1;
+        }
+        return node.terminal;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static class Node {
+        private HashMap<String, Node> children;
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContentResolverCompat;
+
+public class QueryUtils {
+    /**
+     * Queries {@code uri} returning at most {@code limit} rows starting at {@code offset}.
+     * On API 30+ the limit is passed through query args, as MediaStore no longer
+     * accepts LIMIT appended to the sort order. A {@code limit} <= 0 means no limit.
+     */
+    @Nullable
+    public static Cursor query(ContentResolver contentResolver, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs, String sortOrder,
+                               int limit, int offset) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+            if (limit > 0) {
+                queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+                if (offset > 0)
+                    queryArgs.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+            }
+            return contentResolver.query(uri, projection, queryArgs, null);
+        }
+
+        if (limit > 0) {
+            sortOrder += " LIMIT " + limit;
+            if (offset > 0)
+                sortOrder += " OFFSET " + offset;
+        }
+        return ContentResolverCompat.query(contentResolver, uri, projection,
+                selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Counts the rows of {@code uri} matching {@code selection}. On API 30+ the count comes
+     * from {@link ContentResolver#EXTRA_TOTAL_COUNT} of a one row query when the provider
+     * sets it, otherwise {@code COUNT(*)} is queried, falling back to counting ids where
+     * the provider rejects it.
+     *
+     * @return the count, or -1 if the query failed.
+     */
+    public static int count(ContentResolver contentResolver, Uri uri,
+                            String selection, String[] selectionArgs) {
+        String[] idProjection = new String[]{BaseColumns._ID};
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Cursor data = query(contentResolver, uri, idProjection, selection, selectionArgs, null, 1, 0);
+            if (data == null) return -1;
+            try {
+                int count = data.getExtras().getInt(ContentResolver.EXTRA_TOTAL_COUNT, -1);
+                if (count >= 0) return count;
+            } finally {
+                data.close();
+            }
+        } else {
+            try {
+                Cursor data = ContentResolverCompat.query(contentResolver, uri, new String[]{"COUNT(*)"},
+                        selection, selectionArgs, null, null);
+                if (data == null) return -1;
+                try {
+                    if (data.moveToFirst()) return data.getInt(0);
+                } finally {
+                    data.close();
+                }
+            } catch (IllegalArgumentException ignore) {
+                // Projection is not a column
+            }
+        }
+
+        Cursor data = ContentResolverCompat.query(contentResolver, uri, idProjection,
+                selection, selectionArgs, null, null);
+        if (data == null) return -1;
+        try {
+            return data.getCount();
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Estimates how many bytes the rows of {@code cursor} take in a CursorWindow: a slot per
+     * field plus the value of strings and blobs. Reads every row, so use only for debugging.
+     */
+    public static long estimateWindowBytes(Cursor cursor) {
+        final int rowSlotBytes = 4;
+        final int fieldSlotBytes = 12;
+
+        int columns = cursor.getColumnCount();
+        long bytes = 0;
+        int position = cursor.getPosition();
+        if (cursor.moveToFirst())
+            do {
+                bytes += rowSlotBytes + (long) fieldSlotBytes * columns;
+                for (int i = 0; i < columns; i++) {
+                    int type = cursor.getType(i);
+                    if (type == Cursor.FIELD_TYPE_STRING) {
+                        // Stored as UTF-8 with a terminating null, close enough for paths and names
+                        bytes += cursor.getString(i).length() + 1;
+                    } else if (type == Cursor.FIELD_TYPE_BLOB) {
+                        bytes += cursor.getBlob(i).length;
+                    }
+                }
+            } while (cursor.moveToNext());
+        cursor.moveToPosition(position);
+        return bytes;
+    }
+}
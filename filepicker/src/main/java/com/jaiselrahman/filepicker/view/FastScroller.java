@@ -0,0 +1,187 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.SectionIndexer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.jaiselrahman.filepicker.R;
+
+/**
+ * Draggable thumb along the right edge of a {@link RecyclerView}, laid over it. While dragged
+ * it scrolls straight to the position under the thumb and shows its section in a bubble.
+ * <p>
+ * Touches away from the edge are left to the views below.
+ */
+public class FastScroller extends View {
+    private final Paint thumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF rect = new RectF();
+
+    private final int thumbWidth;
+    private final int thumbHeight;
+    private final int touchWidth;
+    private final int padding;
+
+    @Nullable
+    private RecyclerView recyclerView;
+    @Nullable
+    private SectionIndexer sectionIndexer;
+    private int itemStartPosition;
+
+    private float thumbTop;
+    private boolean dragging;
+    @Nullable
+    private String label;
+
+    public FastScroller(Context context) {
+        this(context, null);
+    }
+
+    public FastScroller(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FastScroller(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        thumbWidth = getResources().getDimensionPixelSize(R.dimen.fast_scroller_thumb_width);
+        thumbHeight = getResources().getDimensionPixelSize(R.dimen.fast_scroller_thumb_height);
+        touchWidth = getResources().getDimensionPixelSize(R.dimen.fast_scroller_touch_width);
+        padding = getResources().getDimensionPixelSize(R.dimen.section_header_padding);
+
+        thumbPaint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+        textPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+        textPaint.setTextSize(getResources().getDimension(R.dimen.section_header_text_size));
+    }
+
+    public void attachTo(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (!dragging) {
+                    updateThumb();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param itemStartPosition adapter position of the item at position 0 of the indexer
+     */
+    public void setSectionIndexer(@Nullable SectionIndexer sectionIndexer, int itemStartPosition) {
+        this.sectionIndexer = sectionIndexer;
+        this.itemStartPosition = itemStartPosition;
+        updateThumb();
+    }
+
+    private void updateThumb() {
+        if (recyclerView == null) return;
+        int range = recyclerView.computeVerticalScrollRange() - recyclerView.computeVerticalScrollExtent();
+        float fraction = range > 0 ? (float) recyclerView.computeVerticalScrollOffset() / range : 0;
+        thumbTop = fraction * (getHeight() - thumbHeight);
+        invalidate();
+    }
+
+    private boolean canScroll() {
+        return recyclerView != null && sectionIndexer != null
+                && recyclerView.computeVerticalScrollRange() > recyclerView.getHeight();
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (!canScroll() || event.getX() < getWidth() - touchWidth) return false;
+                dragging = true;
+                getParent().requestDisallowInterceptTouchEvent(true);
+                scrollTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!dragging) return false;
+                scrollTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (!dragging) return false;
+                dragging = false;
+                label = null;
+                updateThumb();
+                return true;
+        }
+        return false;
+    }
+
+    private void scrollTo(float y) {
+        if (recyclerView == null || sectionIndexer == null || recyclerView.getAdapter() == null) return;
+
+        int track = Math.max(getHeight() - thumbHeight, 1);
+        float fraction = Math.max(0, Math.min(1, (y - thumbHeight / 2f) / track));
+        thumbTop = fraction * track;
+
+        int itemCount = recyclerView.getAdapter().getItemCount() - itemStartPosition;
+        if (itemCount > 0) {
+            int position = Math.min((int) (fraction * itemCount), itemCount - 1);
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (layoutManager instanceof LinearLayoutManager) {
+                ((LinearLayoutManager) layoutManager).scrollToPositionWithOffset(position + itemStartPosition, 0);
+            } else {
+                recyclerView.scrollToPosition(position + itemStartPosition);
+            }
+
+            Object[] sections = sectionIndexer.getSections();
+            int section = sectionIndexer.getSectionForPosition(position);
+            label = section < sections.length ? sections[section].toString() : null;
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!canScroll()) return;
+
+        float right = getWidth() - padding;
+        rect.set(right - thumbWidth, thumbTop, right, thumbTop + thumbHeight);
+        canvas.drawRoundRect(rect, thumbWidth / 2f, thumbWidth / 2f, thumbPaint);
+
+        if (dragging && label != null) {
+            Paint.FontMetrics metrics = textPaint.getFontMetrics();
+            float height = metrics.descent - metrics.ascent + padding * 2;
+            float width = textPaint.measureText(label) + padding * 2;
+            float top = Math.max(0, Math.min(getHeight() - height, thumbTop + (thumbHeight - height) / 2));
+            float bubbleRight = right - thumbWidth - padding;
+
+            rect.set(bubbleRight - width, top, bubbleRight, top + height);
+            canvas.drawRoundRect(rect, height / 2, height / 2, thumbPaint);
+            canvas.drawText(label, bubbleRight - width + padding, top + padding - metrics.ascent, textPaint);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.View;
+import android.widget.SectionIndexer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.jaiselrahman.filepicker.R;
+
+/**
+ * Draws the section of the first visible item pinned to the top of the list, pushed up by
+ * the first row of the next section.
+ */
+public class SectionHeaderDecoration extends RecyclerView.ItemDecoration {
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF background = new RectF();
+    private final int padding;
+
+    @Nullable
+    private SectionIndexer sectionIndexer;
+    private int itemStartPosition;
+
+    public SectionHeaderDecoration(Context context) {
+        padding = context.getResources().getDimensionPixelSize(R.dimen.section_header_padding);
+        textPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+        textPaint.setTextSize(context.getResources().getDimension(R.dimen.section_header_text_size));
+        backgroundPaint.setColor(ContextCompat.getColor(context, R.color.transparent_background));
+    }
+
+    /**
+     * @param itemStartPosition adapter position of the item at position 0 of the indexer
+     */
+    public void setSectionIndexer(@Nullable SectionIndexer sectionIndexer, int itemStartPosition) {
+        this.sectionIndexer = sectionIndexer;
+        this.itemStartPosition = itemStartPosition;
+    }
+
+    @Override
+    public void onDrawOver(@NonNull Canvas c, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+        if (sectionIndexer == null || parent.getChildCount() == 0) return;
+
+        View first = parent.getChildAt(0);
+        int position = parent.getChildAdapterPosition(first) - itemStartPosition;
+        if (position < 0) return;
+
+        Object[] sections = sectionIndexer.getSections();
+        int section = sectionIndexer.getSectionForPosition(position);
+        if (section >= sections.length) return;
+
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        float height = metrics.descent - metrics.ascent + padding * 2;
+        float top = padding;
+
+        if (section + 1 < sections.length) {
+            RecyclerView.ViewHolder next = parent.findViewHolderForAdapterPosition(
+                    sectionIndexer.getPositionForSection(section + 1) + itemStartPosition);
+            if (next != null) {
+                top = Math.min(top, next.itemView.getTop() - height - padding);
+            }
+        }
+
+        String label = sections[section].toString();
+        background.set(padding, top, padding * 3 + textPaint.measureText(label), top + height);
+        c.drawRoundRect(background, height / 2, height / 2, backgroundPaint);
+        c.drawText(label, padding * 2, top + padding - metrics.ascent, textPaint);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.config;
+
+import org.junit.Test;
+
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IgnorePathMatcherTest {
+    @Test
+    public void matchesAnyPattern() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{".*WhatsApp.*", ".*/Android/data/.*"});
+
+        assertTrue(matcher.matches("/storage/emulated/0/WhatsApp/Media/a.jpg"));
+        assertTrue(matcher.matches("/storage/emulated/0/Android/data/app/b.png"));
+        assertFalse(matcher.matches("/storage/emulated/0/DCIM/Camera/c.jpg"));
+    }
+
+    @Test
+    public void matchesWholePathOnly() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{"/sdcard/Music"});
+
+        assertTrue(matcher.matches("/sdcard/Music"));
+        assertFalse(matcher.matches("/sdcard/Music/a.mp3"));
+    }
+
+    @Test
+    public void matchesPatternsThatCantBeCombined() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{
+                "/(\\w+)/\\1/.*", "\\Q/a.b/\\E.*", "(?x) /c/ .* # comment"});
+
+        assertTrue(matcher.matches("/x/x/d.jpg"));
+        assertFalse(matcher.matches("/x/y/d.jpg"));
+        assertTrue(matcher.matches("/a.b/d.jpg"));
+        assertFalse(matcher.matches("/aXb/d.jpg"));
+        assertTrue(matcher.matches("/c/d.jpg"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void failsOnInvalidPattern() {
+        new IgnorePathMatcher(new String[]{".*ok.*", "(unclosed"});
+    }
+
+    @Test
+    public void translatesLiteralPathsToGlobs() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{
+                ".*WhatsApp.*", "/sdcard/Android/.*", ".*/Screenshots", "/sdcard/a.mp3"});
+
+        assertArrayEquals(new String[]{"*WhatsApp*", "/sdcard/Android/*", "*/Screenshots"},
+                matcher.getGlobs());
+    }
+
+    @Test
+    public void translatesEscapedCharacters() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{
+                ".*/\\.thumbnails.*", "/sdcard/a\\*b\\?c\\[d.*"});
+
+        assertArrayEquals(new String[]{"*/.thumbnails*", "/sdcard/a[*]b[?]c[[]d*"},
+                matcher.getGlobs());
+    }
+
+    @Test
+    public void leavesOutPatternsThatAreNotLiteral() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{
+                ".*", ".*.*", ".*\\d+.*", ".*[Cc]amera.*", "^/sdcard/x", "/sdcard/(a|b)/.*",
+                "/sdcard/x\\.*", "/sdcard/x+"});
+
+        assertArrayEquals(new String[0], matcher.getGlobs());
+    }
+
+    @Test
+    public void returnsCopies() {
+        IgnorePathMatcher matcher = new IgnorePathMatcher(new String[]{".*WhatsApp.*"});
+        matcher.getGlobs()[0] = null;
+        matcher.getPatterns()[0] = null;
+
+        assertArrayEquals(new String[]{"*WhatsApp*"}, matcher.getGlobs());
+        assertArrayEquals(new String[]{".*WhatsApp.*"}, matcher.getPatterns());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MediaFilePageTest {
+    @Test
+    public void returnsAddedRows() {
+        MediaFilePage page = new MediaFilePage.Builder(null, 1)
+                .add(1, 10, 100, 5, 20, 30, MediaFile.TYPE_VIDEO, 7, "a.mp4", "/a/a.mp4",
+                        "video/mp4", "11", "a")
+                .add(2, 0, 99, 0, 0, 0, MediaFile.TYPE_FILE, -1, "b.pdf", "/b/b.pdf",
+                        null, null, null)
+                .build();
+
+        assertEquals(2, page.size());
+
+        MediaFile video = page.get(0);
+        assertEquals(1, video.getId());
+        assertEquals(10, video.getSize());
+        assertEquals(100, video.getDate());
+        assertEquals(5, video.getDuration());
+        assertEquals(20, video.getHeight());
+        assertEquals(30, video.getWidth());
+        assertEquals(MediaFile.TYPE_VIDEO, video.getMediaType());
+        assertEquals(7, video.getAlbumId());
+        assertEquals("a.mp4", video.getName());
+        assertEquals("video/mp4", video.getMimeType());
+        assertEquals("11", video.getBucketId());
+        assertEquals("a", video.getBucketName());
+
+        MediaFile file = page.get(1);
+        assertEquals(2, file.getId());
+        assertNull(file.getMimeType());
+        assertNull(file.getBucketId());
+        assertNull(file.getBucketName());
+    }
+
+    @Test
+    public void growsPastCapacity() {
+        MediaFilePage.Builder builder = new MediaFilePage.Builder(null, 2);
+        for (int id = 0; id < 100; id++) {
+            builder.add(id, 0, 100 - id, 0, 0, 0, MediaFile.TYPE_IMAGE, -1, id + ".jpg", null,
+                    "image/jpeg", "1", "Camera");
+        }
+        MediaFilePage page = builder.build();
+
+        assertEquals(100, page.size());
+        for (int id = 0; id < 100; id++) {
+            assertEquals(id, page.get(id).getId());
+            assertEquals(id + ".jpg", page.get(id).getName());
+        }
+    }
+
+    @Test
+    public void sharesRepeatedStrings() {
+        MediaFilePage page = new MediaFilePage.Builder(null, 2)
+                .add(1, 0, 0, 0, 0, 0, MediaFile.TYPE_IMAGE, -1, null, null,
+                        new String("image/jpeg"), new String("1"), "Camera")
+                .add(2, 0, 0, 0, 0, 0, MediaFile.TYPE_IMAGE, -1, null, null,
+                        new String("image/jpeg"), new String("1"), "Camera")
+                .build();
+
+        assertSame(page.get(0).getMimeType(), page.get(1).getMimeType());
+        assertSame(page.get(0).getBucketId(), page.get(1).getBucketId());
+    }
+
+    @Test
+    public void rowsEqualCopiesById() {
+        MediaFilePage page = new MediaFilePage.Builder(null, 1)
+                .add(1, 0, 0, 0, 0, 0, MediaFile.TYPE_IMAGE, -1, null, null, null, null, null)
+                .build();
+
+        List<MediaFile> copy = new ArrayList<>(page);
+        assertEquals(copy, page);
+        assertEquals(0, page.indexOf(copy.get(0)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void failsOutOfBounds() {
+        new MediaFilePage.Builder(null, 1).build().get(0);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.model;
+
+import com.jaiselrahman.filepicker.config.Configurations;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MediaRepositoryTest {
+    private final Configurations configs = new Configurations.Builder().build();
+    private final List<MediaRepository> acquired = new ArrayList<>();
+
+    @After
+    public void releaseAll() {
+        for (MediaRepository repository : acquired) {
+            repository.release();
+        }
+    }
+
+    @Test
+    public void returnsLoadedSlices() {
+        MediaRepository repository = acquire(configs);
+        repository.put(null, 0, files(0, 10, "1"), 10);
+
+        assertIds(repository.get(null, 0, 5), 0, 1, 2, 3, 4);
+        assertIds(repository.get(null, 5, 5), 5, 6, 7, 8, 9);
+        assertNull(repository.get(null, 8, 5));
+    }
+
+    @Test
+    public void returnsRestOfCompleteRows() {
+        MediaRepository repository = acquire(configs);
+        repository.put(null, 0, files(0, 3, "1"), 10);
+
+        assertIds(repository.get(null, 0, 10), 0, 1, 2);
+        assertIds(repository.get(null, 2, 10), 2);
+        assertIds(repository.get(null, 5, 10));
+    }
+
+    @Test
+    public void keepsOnlyRowsWithoutGap() {
+        MediaRepository repository = acquire(configs);
+        repository.put(null, 5, files(5, 5, "1"), 5);
+        assertNull(repository.get(null, 5, 5));
+
+        repository.put(null, 0, files(0, 5, "1"), 5);
+        repository.put(null, 10, files(10, 5, "1"), 5);
+        assertNull(repository.get(null, 10, 5));
+    }
+
+    @Test
+    public void servesFolderFromAllFiles() {
+        MediaRepository repository = acquire(configs);
+        List<MediaFile> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(file(i, 100 - i, i % 2 == 0 ? "1" : "2"));
+        }
+        repository.put(null, 0, files, 10);
+
+        assertIds(repository.get(1L, 0, 2), 0, 2);
+        assertIds(repository.get(2L, 1, 5), 3, 5);
+    }
+
+    @Test
+    public void returnsRowsAfterKey() {
+        MediaRepository repository = acquire(configs);
+        repository.putAfter(null, null, files(0, 4, "1"), 10);
+
+        MediaFileKeyedDataSource.Key key = new MediaFileKeyedDataSource.Key(99, 1);
+        assertIds(repository.getAfter(null, key, false, 2), 2, 3);
+        assertIds(repository.getAfter(null, key, true, 2), 1, 2);
+    }
+
+    @Test
+    public void keepsRowsAfterLastKept() {
+        MediaRepository repository = acquire(configs);
+        repository.putAfter(null, null, files(0, 2, "1"), 2);
+        repository.putAfter(null, new MediaFileKeyedDataSource.Key(0, 0), files(2, 2, "1"), 2);
+        assertNull(repository.get(null, 2, 2));
+
+        repository.putAfter(null, new MediaFileKeyedDataSource.Key(99, 1), files(2, 2, "1"), 2);
+        assertIds(repository.get(null, 0, 4), 0, 1, 2, 3);
+    }
+
+    @Test
+    public void clearDropsRows() {
+        MediaRepository repository = acquire(configs);
+        repository.put(null, 0, files(0, 3, "1"), 10);
+        repository.clear();
+
+        assertNull(repository.get(null, 0, 3));
+    }
+
+    @Test
+    public void isSharedUntilLastRelease() {
+        MediaRepository first = MediaRepository.acquire(configs);
+        MediaRepository second = MediaRepository.acquire(configs);
+        assertSame(first, second);
+
+        first.release();
+        assertSame(second, MediaRepository.get(configs));
+
+        second.release();
+        assertNull(MediaRepository.get(configs));
+    }
+
+    @Test
+    public void sharesRepositoryForSameSuffixes() {
+        Configurations dotted = new Configurations.Builder()
+                .setShowFiles(true)
+                .setSuffixes(".pdf", ".txt")
+                .build();
+        Configurations plain = new Configurations.Builder()
+                .setShowFiles(true)
+                .setSuffixes("pdf", "txt")
+                .build();
+
+        assertSame(acquire(dotted), MediaRepository.get(plain));
+    }
+
+    @Test
+    public void isNotUsedForColumnarPages() {
+        acquire(configs);
+        Configurations columnar = new Configurations.Builder()
+                .setColumnarPages(true)
+                .build();
+
+        assertNull(MediaRepository.get(columnar));
+    }
+
+    private MediaRepository acquire(Configurations configs) {
+        MediaRepository repository = MediaRepository.acquire(configs);
+        acquired.add(repository);
+        return repository;
+    }
+
+    /**
+     * @return {@code count} files from id {@code start}, newest first.
+     */
+    private static List<MediaFile> files(int start, int count, String bucketId) {
+        List<MediaFile> files = new ArrayList<>(count);
+        for (int id = start; id < start + count; id++) {
+            files.add(file(id, 100 - id, bucketId));
+        }
+        return files;
+    }
+
+    private static MediaFile file(long id, long date, String bucketId) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(id);
+        mediaFile.setDate(date);
+        mediaFile.setBucketId(bucketId);
+        return mediaFile;
+    }
+
+    private static void assertIds(List<MediaFile> files, long... ids) {
+        assertNotNull(files);
+        assertEquals(ids.length, files.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], files.get(i).getId());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) 2020, Jaisel Rahman <jaiselrahman@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.jaiselrahman.filepicker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrieTest {
+    @Test
+    public void matchesAddedDirAndItsChildren() {
+        PathTrie trie = new PathTrie();
+        trie.add("/storage/emulated/0/WhatsApp");
+
+        assertTrue(trie.containsPrefixOf("/storage/emulated/0/WhatsApp"));
+        assertTrue(trie.containsPrefixOf("/storage/emulated/0/WhatsApp/Media"));
+        assertTrue(trie.containsPrefixOf("/storage/emulated/0/WhatsApp/Media/Images"));
+    }
+
+    @Test
+    public void doesNotMatchPartialSegment() {
+        PathTrie trie = new PathTrie();
+        trie.add("/storage/emulated/0/DCIM");
+
+        assertFalse(trie.containsPrefixOf("/storage/emulated/0/DCIM2"));
+        assertFalse(trie.containsPrefixOf("/storage/emulated/0/DC"));
+        assertFalse(trie.containsPrefixOf("/storage/emulated/0"));
+    }
+
+    @Test
+    public void ignoresRepeatedAndTrailingSeparators() {
+        PathTrie trie = new PathTrie();
+        trie.add("/storage//emulated/0/Music/");
+
+        assertTrue(trie.containsPrefixOf("/storage/emulated/0/Music"));
+        assertTrue(trie.containsPrefixOf("/storage/emulated//0/Music/Albums/"));
+    }
+
+    @Test
+    public void countsDistinctDirs() {
+        PathTrie trie = new PathTrie();
+        trie.add("/a/b");
+        trie.add("/a/b");
+        trie.add("/a/c");
+        trie.add("/a");
+
+        assertEquals(3, trie.size());
+        assertTrue(trie.containsPrefixOf("/a/d"));
+    }
+
+    @Test
+    public void emptyTrieMatchesNothing() {
+        PathTrie trie = new PathTrie();
+
+        assertFalse(trie.containsPrefixOf("/"));
+        assertFalse(trie.containsPrefixOf("/storage/emulated/0"));
+        assertEquals(0, trie.size());
+    }
+}